@@ -0,0 +1,86 @@
+package SimpleTomcat.Test;
+
+import SimpleTomcat.http.ByteRange;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * ByteRange.parse: null means the Range header is ignored (200), an empty list means 416
+ */
+public class TestByteRange {
+    private static final long LENGTH = 1000;
+
+    @Test
+    public void testSuffix() {
+        assertRanges(ByteRange.parse("bytes=-500", LENGTH), 500, 999);
+        // a suffix longer than the body is the whole body
+        assertRanges(ByteRange.parse("bytes=-5000", LENGTH), 0, 999);
+    }
+
+    @Test
+    public void testOpenEnded() {
+        assertRanges(ByteRange.parse("bytes=500-", LENGTH), 500, 999);
+        // the last position is limited to the body
+        assertRanges(ByteRange.parse("bytes=500-5000", LENGTH), 500, 999);
+        assertRanges(ByteRange.parse(" bytes=0-0 ", LENGTH), 0, 0);
+    }
+
+    @Test
+    public void testSeveralRanges() {
+        assertRanges(ByteRange.parse("bytes=0-99, 900-", LENGTH), 0, 99, 900, 999);
+        // ranges which do not overlap keep the order of the header
+        assertRanges(ByteRange.parse("bytes=900-,0-99", LENGTH), 900, 999, 0, 99);
+        // empty list elements are skipped
+        assertRanges(ByteRange.parse("bytes=0-9,", LENGTH), 0, 9);
+        assertRanges(ByteRange.parse("bytes=, 0-9", LENGTH), 0, 9);
+    }
+
+    @Test
+    public void testOverlapping() {
+        assertRanges(ByteRange.parse("bytes=0-499,400-599", LENGTH), 0, 599);
+        assertRanges(ByteRange.parse("bytes=500-,-600,0-9", LENGTH), 0, 9, 400, 999);
+        assertRanges(ByteRange.parse("bytes=0-99,0-99", LENGTH), 0, 99);
+    }
+
+    @Test
+    public void testUnsatisfiable() {
+        Assert.assertTrue(ByteRange.parse("bytes=1000-", LENGTH).isEmpty());
+        Assert.assertTrue(ByteRange.parse("bytes=1000-1999,5000-", LENGTH).isEmpty());
+        Assert.assertTrue(ByteRange.parse("bytes=-0", LENGTH).isEmpty());
+        Assert.assertTrue(ByteRange.parse("bytes=0-", 0).isEmpty());
+        // satisfiable ranges of a partly unsatisfiable set are sent
+        assertRanges(ByteRange.parse("bytes=2000-,0-9", LENGTH), 0, 9);
+    }
+
+    @Test
+    public void testMalformed() {
+        Assert.assertNull(ByteRange.parse("items=0-9", LENGTH));
+        Assert.assertNull(ByteRange.parse("bytes=", LENGTH));
+        Assert.assertNull(ByteRange.parse("bytes=-", LENGTH));
+        Assert.assertNull(ByteRange.parse("bytes=10", LENGTH));
+        Assert.assertNull(ByteRange.parse("bytes=9-0", LENGTH));
+        Assert.assertNull(ByteRange.parse("bytes=a-9", LENGTH));
+        Assert.assertNull(ByteRange.parse("bytes=--5", LENGTH));
+        Assert.assertNull(ByteRange.parse("bytes=+1-9", LENGTH));
+        Assert.assertNull(ByteRange.parse("bytes=,", LENGTH));
+        Assert.assertNull(ByteRange.parse("bytes=99999999999999999999-", LENGTH));
+        // too many ranges
+        Assert.assertNull(ByteRange.parse("bytes=0-0,2-2,4-4,6-6,8-8,10-10,12-12,14-14,16-16,18-18,20-20,"
+                + "22-22,24-24,26-26,28-28,30-30,32-32", LENGTH));
+    }
+
+    /**
+     * @param ranges: parsed ranges
+     * @param positions: start and end of each expected range
+     */
+    private static void assertRanges(List<ByteRange> ranges, long... positions) {
+        Assert.assertNotNull(ranges);
+        Assert.assertEquals(positions.length / 2, ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            Assert.assertEquals(positions[2 * i], ranges.get(i).getStart());
+            Assert.assertEquals(positions[2 * i + 1], ranges.get(i).getEnd());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package SimpleTomcat.Test;
+
+import SimpleTomcat.compression.CompressionPolicy;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * the size, mime type and User-Agent rules of the compression attributes of a connector
+ */
+public class TestCompressionPolicy {
+    private static final String CHROME = "Mozilla/5.0 (Windows NT 10.0) Chrome/120.0";
+
+    private static CompressionPolicy policy(String compression, int minSize, int maxSize, String noCompressionUserAgents) {
+        return new CompressionPolicy(compression, minSize, maxSize, -1, " text/html, text/plain ,,application/json",
+                noCompressionUserAgents, Arrays.asList("gzip"));
+    }
+
+    @Test
+    public void testDisabled() {
+        Assert.assertFalse(policy("off", 0, -1, null).isCompressible("text/html", 4096, CHROME));
+        Assert.assertFalse(policy(null, 0, -1, null).isCompressible("text/html", 4096, CHROME));
+        Assert.assertTrue(policy(" ON ", 0, -1, null).isCompressible("text/html", 4096, CHROME));
+    }
+
+    @Test
+    public void testSize() {
+        CompressionPolicy policy = policy("on", 2048, 8192, null);
+        Assert.assertFalse(policy.isCompressible("text/html", 2047, CHROME));
+        Assert.assertTrue(policy.isCompressible("text/html", 2048, CHROME));
+        Assert.assertTrue(policy.isCompressible("text/html", 8192, CHROME));
+        Assert.assertFalse(policy.isCompressible("text/html", 8193, CHROME));
+        // the length of a streamed body is unknown: the limits are not checked
+        Assert.assertTrue(policy.isCompressible("text/html", -1, CHROME));
+        // no upper limit
+        Assert.assertTrue(policy("on", 2048, -1, null).isCompressible("text/html", Integer.MAX_VALUE, CHROME));
+    }
+
+    @Test
+    public void testMimeType() {
+        CompressionPolicy policy = policy("on", 0, -1, null);
+        Assert.assertTrue(policy.isCompressible("text/plain", 4096, CHROME));
+        Assert.assertTrue(policy.isCompressible("application/json", 4096, CHROME));
+        // parameters are ignored
+        Assert.assertTrue(policy.isCompressible("text/html; charset=utf-8", 4096, CHROME));
+        Assert.assertFalse(policy.isCompressible("image/png", 4096, CHROME));
+        Assert.assertFalse(policy.isCompressible(null, 4096, CHROME));
+    }
+
+    @Test
+    public void testUserAgent() {
+        CompressionPolicy policy = policy("on", 0, -1, "MSIE 6.0, OldBot");
+        Assert.assertFalse(policy.isCompressible("text/html", 4096, "Mozilla/4.0 (compatible; MSIE 6.0; Windows NT 5.1)"));
+        Assert.assertFalse(policy.isCompressible("text/html", 4096, "OldBot/1.0"));
+        Assert.assertTrue(policy.isCompressible("text/html", 4096, CHROME));
+        Assert.assertTrue(policy.isCompressible("text/html", 4096, null));
+        // the remembered result is the same as the first one
+        Assert.assertFalse(policy.isCompressible("text/html", 4096, "OldBot/1.0"));
+        Assert.assertTrue(policy.isCompressible("text/html", 4096, CHROME));
+    }
+}
@@ -0,0 +1,70 @@
+package SimpleTomcat.Test;
+
+import SimpleTomcat.compression.ContentEncoder;
+import SimpleTomcat.compression.ContentEncoders;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * quality values of Accept-Encoding and the negotiation of a content coding
+ */
+public class TestContentEncoders {
+    private static final List<String> GZIP_DEFLATE = Arrays.asList("gzip", "deflate");
+
+    @Test
+    public void testQuality() {
+        Assert.assertEquals(1, ContentEncoders.getQuality("gzip", "gzip"), 0);
+        Assert.assertEquals(0.8, ContentEncoders.getQuality("br;q=1.0, gzip;q=0.8", "gzip"), 0);
+        Assert.assertEquals(0.8, ContentEncoders.getQuality("GZIP; Q=0.8", "gzip"), 0);
+        Assert.assertEquals(0, ContentEncoders.getQuality("deflate", "gzip"), 0);
+        Assert.assertEquals(0, ContentEncoders.getQuality(null, "gzip"), 0);
+        // out of range values are limited to 0..1
+        Assert.assertEquals(1, ContentEncoders.getQuality("gzip;q=1.5", "gzip"), 0);
+    }
+
+    @Test
+    public void testZeroQuality() {
+        Assert.assertEquals(0, ContentEncoders.getQuality("gzip;q=0", "gzip"), 0);
+        Assert.assertNull(ContentEncoders.negotiate("gzip;q=0", GZIP_DEFLATE));
+        Assert.assertEquals("deflate", ContentEncoders.negotiate("gzip;q=0, deflate", GZIP_DEFLATE).getName());
+    }
+
+    @Test
+    public void testWildcard() {
+        Assert.assertEquals(0.5, ContentEncoders.getQuality("br, *;q=0.5", "gzip"), 0);
+        Assert.assertEquals("gzip", ContentEncoders.negotiate("*", GZIP_DEFLATE).getName());
+        // a listed coding wins over *, whichever comes first
+        Assert.assertEquals(0, ContentEncoders.getQuality("*, gzip;q=0", "gzip"), 0);
+        Assert.assertEquals(0, ContentEncoders.getQuality("gzip;q=0, *", "gzip"), 0);
+        Assert.assertEquals("deflate", ContentEncoders.negotiate("*, gzip;q=0", GZIP_DEFLATE).getName());
+        Assert.assertNull(ContentEncoders.negotiate("*;q=0", GZIP_DEFLATE));
+    }
+
+    @Test
+    public void testEqualQuality() {
+        // the order of the server decides
+        Assert.assertEquals("gzip", ContentEncoders.negotiate("deflate;q=0.5, gzip;q=0.5", GZIP_DEFLATE).getName());
+        Assert.assertEquals("deflate", ContentEncoders.negotiate("gzip, deflate", Arrays.asList("deflate", "gzip")).getName());
+        // a higher quality wins over the order of the server
+        Assert.assertEquals("deflate", ContentEncoders.negotiate("gzip;q=0.5, deflate", GZIP_DEFLATE).getName());
+    }
+
+    @Test
+    public void testIdentity() {
+        Assert.assertEquals("gzip", ContentEncoders.negotiate("gzip, identity;q=0", GZIP_DEFLATE).getName());
+        // identity refused and no coding accepted: the body is still sent as it is
+        Assert.assertNull(ContentEncoders.negotiate("identity;q=0", GZIP_DEFLATE));
+        Assert.assertNull(ContentEncoders.negotiate("identity", GZIP_DEFLATE));
+    }
+
+    @Test
+    public void testUnknownCoding() {
+        Assert.assertNull(ContentEncoders.get("unknown"));
+        Assert.assertNull(ContentEncoders.negotiate("unknown", Arrays.asList("unknown")));
+        ContentEncoder encoder = ContentEncoders.negotiate("unknown, gzip;q=0.1", Arrays.asList("unknown", "gzip"));
+        Assert.assertEquals("gzip", encoder.getName());
+    }
+}
@@ -0,0 +1,104 @@
+package SimpleTomcat.Test;
+
+import SimpleTomcat.exception.BadRequestException;
+import SimpleTomcat.exception.RequestTooLargeException;
+import SimpleTomcat.http.HttpRequestParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HttpRequestParser works without a server: bytes are appended the way the NIO poller does
+ */
+public class TestHttpRequestParser {
+    private static final int MAX_POST_SIZE = 1024;
+
+    @Test
+    public void testSplitAcrossReads() throws IOException {
+        HttpRequestParser parser = new HttpRequestParser(MAX_POST_SIZE);
+        String request = "POST /form?a=1 HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\n\r\nhello";
+        // one byte per read: every state of the parser has to stop and resume
+        for (int i = 0; i < request.length() - 1; i++) {
+            append(parser, request.substring(i, i + 1));
+            Assert.assertFalse(parser.parse());
+        }
+        append(parser, request.substring(request.length() - 1));
+        Assert.assertTrue(parser.parse());
+        Assert.assertEquals("POST", parser.getMethod());
+        Assert.assertEquals("/form", parser.getRequestUri());
+        Assert.assertEquals("a=1", parser.getQueryString());
+        Assert.assertEquals("HTTP/1.1", parser.getProtocol());
+        Assert.assertEquals("localhost", parser.getHeaders().get("host"));
+        Assert.assertEquals("hello", new String(parser.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testPipelinedRequests() throws IOException {
+        HttpRequestParser parser = new HttpRequestParser(MAX_POST_SIZE);
+        append(parser, "POST /a HTTP/1.1\r\nContent-Length: 3\r\n\r\nabcGET /b HTTP/1.1\r\nHost: x\r\n\r\nGET /c");
+        Assert.assertTrue(parser.parse());
+        Assert.assertEquals("/a", parser.getRequestUri());
+        Assert.assertEquals("abc", new String(parser.getBody(), StandardCharsets.UTF_8));
+
+        parser.recycle();
+        Assert.assertTrue(parser.parse());
+        Assert.assertEquals("GET", parser.getMethod());
+        Assert.assertEquals("/b", parser.getRequestUri());
+        Assert.assertNull(parser.getBody());
+
+        // the third request is incomplete and stays buffered
+        parser.recycle();
+        Assert.assertFalse(parser.parse());
+        append(parser, " HTTP/1.1\r\n\r\n");
+        Assert.assertTrue(parser.parse());
+        Assert.assertEquals("/c", parser.getRequestUri());
+    }
+
+    @Test(expected = IOException.class)
+    public void testOversizedHeader() throws IOException {
+        HttpRequestParser parser = new HttpRequestParser(MAX_POST_SIZE);
+        StringBuilder request = new StringBuilder("GET / HTTP/1.1\r\nX-Large: ");
+        for (int i = 0; i < 9000; i++) {
+            request.append('a');
+        }
+        append(parser, request.toString());
+        parser.parse();
+    }
+
+    @Test(expected = RequestTooLargeException.class)
+    public void testOversizedBody() throws IOException {
+        HttpRequestParser parser = new HttpRequestParser(MAX_POST_SIZE);
+        // refused as soon as the header is parsed, without any body byte
+        append(parser, "POST / HTTP/1.1\r\nContent-Length: " + (MAX_POST_SIZE + 1) + "\r\n\r\n");
+        parser.parse();
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testConflictingContentLength() throws IOException {
+        HttpRequestParser parser = new HttpRequestParser(MAX_POST_SIZE);
+        append(parser, "POST / HTTP/1.1\r\nContent-Length: 3\r\nContent-Length: 10\r\n\r\nabc");
+        parser.parse();
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testConflictingContentLengthList() throws IOException {
+        HttpRequestParser parser = new HttpRequestParser(MAX_POST_SIZE);
+        append(parser, "POST / HTTP/1.1\r\nContent-Length: 3, 10\r\n\r\nabc");
+        parser.parse();
+    }
+
+    @Test
+    public void testRepeatedEqualContentLength() throws IOException {
+        HttpRequestParser parser = new HttpRequestParser(MAX_POST_SIZE);
+        append(parser, "POST / HTTP/1.1\r\nContent-Length: 3\r\nContent-Length: 3\r\n\r\nabc");
+        Assert.assertTrue(parser.parse());
+        Assert.assertEquals("abc", new String(parser.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private static void append(HttpRequestParser parser, String bytes) {
+        parser.append(ByteBuffer.wrap(bytes.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -15,6 +15,7 @@ import org.junit.Test;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.net.Socket;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
@@ -259,6 +260,132 @@ public class TestSimpleTomcat {
         containAssert(html,"Hello DIY Tomcat from HelloServlet@javaweb");
     }
 
+    @Test
+    public void testKeepAlive() throws IOException {
+        try (Socket socket = new Socket(ip, port)) {
+            String request = "GET /a.txt HTTP/1.1\r\nHost: " + ip + "\r\n\r\n"
+                    + "GET /a.txt HTTP/1.1\r\nHost: " + ip + "\r\nConnection: close\r\n\r\n";
+            socket.getOutputStream().write(request.getBytes());
+            String http = IoUtil.read(socket.getInputStream(), "utf-8");
+            Assert.assertEquals(2, StrUtil.count(http, "HTTP/1.1 200 OK"));
+            containAssert(http, "Connection: keep-alive");
+            containAssert(http, "Connection: close");
+        }
+    }
+
+    @Test
+    public void testHeadKeepAlive() throws IOException {
+        try (Socket socket = new Socket(ip, port)) {
+            String request = "HEAD /a.txt HTTP/1.1\r\nHost: " + ip + "\r\n\r\n"
+                    + "GET /a.txt HTTP/1.1\r\nHost: " + ip + "\r\nConnection: close\r\n\r\n";
+            socket.getOutputStream().write(request.getBytes());
+            String http = IoUtil.read(socket.getInputStream(), "utf-8");
+            String head = StrUtil.subBefore(http, "\r\n\r\n", false);
+            String contentLength = StrUtil.subBetween(head, "Content-Length: ", "\r\n");
+            // the second response starts right after the head of the first one
+            String second = StrUtil.subAfter(http, "\r\n\r\n", false);
+            Assert.assertTrue(second.startsWith("HTTP/1.1 200 OK"));
+            Assert.assertEquals(contentLength, StrUtil.subBetween(second, "Content-Length: ", "\r\n"));
+            Assert.assertEquals(1, StrUtil.count(http, "Hello Simple Tomcat from a.txt"));
+        }
+    }
+
+    @Test
+    public void testPayloadTooLarge() throws IOException {
+        try (Socket socket = new Socket(ip, port)) {
+            String request = "POST /a.txt HTTP/1.1\r\nHost: " + ip + "\r\nContent-Length: 2147483647\r\n\r\n";
+            socket.getOutputStream().write(request.getBytes());
+            String http = IoUtil.read(socket.getInputStream(), "utf-8");
+            containAssert(http, "HTTP/1.1 413 Payload Too Large");
+            containAssert(http, "Connection: close");
+        }
+    }
+
+    @Test
+    public void testNotModified() throws IOException {
+        String http = getHttpString("/a.txt");
+        String eTag = StrUtil.subBetween(http, "ETag: ", "\r\n");
+        Assert.assertNotNull(eTag);
+        try (Socket socket = new Socket(ip, port)) {
+            String request = "GET /a.txt HTTP/1.1\r\nHost: " + ip + "\r\nIf-None-Match: " + eTag + "\r\nConnection: close\r\n\r\n";
+            socket.getOutputStream().write(request.getBytes());
+            String response = IoUtil.read(socket.getInputStream(), "utf-8");
+            containAssert(response, "HTTP/1.1 304 Not Modified");
+            Assert.assertFalse(response.contains("Hello Simple Tomcat from a.txt"));
+        }
+    }
+
+    @Test
+    public void testRange() throws IOException {
+        String response = getRangeString("/a.txt", "bytes=0-4", null);
+        containAssert(response, "HTTP/1.1 206 Partial Content");
+        containAssert(response, "Content-Range: bytes 0-4/30");
+        containAssert(response, "Content-Length: 5");
+        Assert.assertTrue(response.endsWith("\r\n\r\nHello"));
+
+        response = getRangeString("/a.txt", "bytes=-3", null);
+        containAssert(response, "Content-Range: bytes 27-29/30");
+        Assert.assertTrue(response.endsWith("\r\n\r\ntxt"));
+    }
+
+    @Test
+    public void testMultipartByteranges() throws IOException {
+        String response = getRangeString("/a.txt", "bytes=0-4,-3", null);
+        containAssert(response, "HTTP/1.1 206 Partial Content");
+        String boundary = StrUtil.subBetween(response, "Content-Type: multipart/byteranges; boundary=", "\r\n");
+        Assert.assertNotNull(boundary);
+        containAssert(response, "Content-Range: bytes 0-4/30\r\n\r\nHello\r\n--" + boundary);
+        containAssert(response, "Content-Range: bytes 27-29/30\r\n\r\ntxt\r\n--" + boundary + "--");
+        // Content-Length covers the whole multipart body
+        String body = StrUtil.subAfter(response, "\r\n\r\n", false);
+        Assert.assertEquals(String.valueOf(body.length()), StrUtil.subBetween(response, "Content-Length: ", "\r\n"));
+    }
+
+    @Test
+    public void testRangeNotSatisfiable() throws IOException {
+        String response = getRangeString("/a.txt", "bytes=30-", null);
+        containAssert(response, "HTTP/1.1 416 Range Not Satisfiable");
+        containAssert(response, "Content-Range: bytes */30");
+        // an invalid Range header is ignored
+        response = getRangeString("/a.txt", "bytes=9-0", null);
+        containAssert(response, "HTTP/1.1 200 OK");
+        Assert.assertTrue(response.endsWith("Hello Simple Tomcat from a.txt"));
+    }
+
+    @Test
+    public void testIfRange() throws IOException {
+        String http = getHttpString("/a.txt");
+        String eTag = StrUtil.subBetween(http, "ETag: ", "\r\n");
+        String lastModified = StrUtil.subBetween(http, "Last-Modified: ", "\r\n");
+        Assert.assertNotNull(eTag);
+        Assert.assertNotNull(lastModified);
+
+        containAssert(getRangeString("/a.txt", "bytes=0-4", eTag), "HTTP/1.1 206 Partial Content");
+        containAssert(getRangeString("/a.txt", "bytes=0-4", lastModified), "HTTP/1.1 206 Partial Content");
+        // the resource changed: the whole body is sent
+        String response = getRangeString("/a.txt", "bytes=0-4", "W/\"0-0\"");
+        containAssert(response, "HTTP/1.1 200 OK");
+        Assert.assertTrue(response.endsWith("Hello Simple Tomcat from a.txt"));
+        response = getRangeString("/a.txt", "bytes=0-4", "Thu, 01 Jan 1970 00:00:00 GMT");
+        containAssert(response, "HTTP/1.1 200 OK");
+    }
+
+    /**
+     * send a Range request over a raw socket, without Accept-Encoding, so the body is not gzipped
+     * @param uri: uri
+     * @param range: value of Range header
+     * @param ifRange: value of If-Range header, null for none
+     * @return whole http response
+     */
+    private String getRangeString(String uri, String range, String ifRange) throws IOException {
+        try (Socket socket = new Socket(ip, port)) {
+            String request = "GET " + uri + " HTTP/1.1\r\nHost: " + ip + "\r\nRange: " + range + "\r\n"
+                    + (ifRange == null ? "" : "If-Range: " + ifRange + "\r\n") + "Connection: close\r\n\r\n";
+            socket.getOutputStream().write(request.getBytes());
+            return IoUtil.read(socket.getInputStream(), "utf-8");
+        }
+    }
+
     private byte[] getContentBytes(String uri) {
         return getContentBytes(uri,false);
     }
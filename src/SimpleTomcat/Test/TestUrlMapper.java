@@ -0,0 +1,105 @@
+package SimpleTomcat.Test;
+
+import SimpleTomcat.catalina.UrlMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * UrlMapper against the url-pattern rules of the Servlet specification; every pattern is mapped to itself
+ */
+public class TestUrlMapper {
+
+    @Test
+    public void testExactBeforePrefix() {
+        UrlMapper<String> mapper = mapper("/api/*", "/api/hello");
+        Assert.assertEquals("/api/hello", mapper.map("/api/hello"));
+        Assert.assertEquals("/api/*", mapper.map("/api/hello/x"));
+    }
+
+    @Test
+    public void testLongestPrefix() {
+        UrlMapper<String> mapper = mapper("/api/*", "/api/v1/*", "/");
+        Assert.assertEquals("/api/v1/*", mapper.map("/api/v1/a/b"));
+        Assert.assertEquals("/api/*", mapper.map("/api/v2/a"));
+        // a prefix matches whole segments only
+        Assert.assertEquals("/", mapper.map("/apix"));
+        Assert.assertEquals("/api/*", mapper.map("/api"));
+    }
+
+    @Test
+    public void testPrefixBeforeExtension() {
+        UrlMapper<String> mapper = mapper("*.do", "/api/*", "/");
+        Assert.assertEquals("/api/*", mapper.map("/api/y.do"));
+        Assert.assertEquals("*.do", mapper.map("/x/y.do"));
+        // the extension is the one of the last segment
+        Assert.assertEquals("/", mapper.map("/x.do/y"));
+    }
+
+    @Test
+    public void testExtensionBeforeDefault() {
+        UrlMapper<String> mapper = mapper("/", "*.jsp", "/*.do");
+        Assert.assertEquals("*.jsp", mapper.map("/index.jsp"));
+        Assert.assertEquals("/*.do", mapper.map("/a/b.do"));
+        Assert.assertEquals("/", mapper.map("/a/b.html"));
+        Assert.assertNull(mapper("/hello").map("/other"));
+    }
+
+    @Test
+    public void testSlashStarAndSlash() {
+        UrlMapper<String> mapper = mapper("/*", "/", "*.jsp");
+        // /* is a path prefix and wins over an extension and the default pattern
+        Assert.assertEquals("/*", mapper.map("/"));
+        Assert.assertEquals("/*", mapper.map("/index.jsp"));
+        Assert.assertEquals("/*", mapper.map("/a/b"));
+        Assert.assertEquals("/", mapper("/", "/hello").map("/a/b"));
+    }
+
+    @Test
+    public void testTrailingSlash() {
+        UrlMapper<String> mapper = mapper("/hello", "/api/*", "/");
+        Assert.assertEquals("/hello", mapper.map("/hello"));
+        Assert.assertEquals("/", mapper.map("/hello/"));
+        Assert.assertEquals("/api/*", mapper.map("/api/"));
+    }
+
+    @Test
+    public void testMatchAll() {
+        UrlMapper<String> mapper = mapper("/*", "/api/*", "/api/hello", "*.do", "/");
+        Assert.assertEquals(Arrays.asList("/*", "/api/*", "/api/hello"), matchAll(mapper, "/api/hello"));
+        Assert.assertEquals(Arrays.asList("*.do", "/*", "/api/*"), matchAll(mapper, "/api/x.do"));
+        // the default pattern only matches /
+        Assert.assertEquals(Arrays.asList("/", "/*"), matchAll(mapper, "/"));
+        Assert.assertEquals(Collections.singletonList("/*"), matchAll(mapper, "/other"));
+    }
+
+    @Test
+    public void testMatchKey() {
+        UrlMapper<String> mapper = mapper("/api/*", "*.do");
+        // uris matching the same patterns share a key, however they differ
+        Assert.assertEquals(mapper.matchKey("/api/a"), mapper.matchKey("/api/b/c"));
+        Assert.assertEquals(mapper.matchKey("/x.do"), mapper.matchKey("/y/z.do"));
+        Assert.assertEquals(mapper.matchKey("/a"), mapper.matchKey("/b"));
+        Assert.assertFalse(mapper.matchKey("/api/a").equals(mapper.matchKey("/api/a.do")));
+        Assert.assertFalse(mapper.matchKey("/api/a").equals(mapper.matchKey("/a")));
+    }
+
+    private static UrlMapper<String> mapper(String... patterns) {
+        UrlMapper<String> mapper = new UrlMapper<>();
+        for (String pattern : patterns) {
+            mapper.add(pattern, pattern);
+        }
+        return mapper;
+    }
+
+    private static List<String> matchAll(UrlMapper<String> mapper, String uri) {
+        List<String> targets = new ArrayList<>();
+        mapper.matchAll(uri, targets);
+        Collections.sort(targets);
+        return targets;
+    }
+}
@@ -0,0 +1,225 @@
+package SimpleTomcat.catalina;
+
+import SimpleTomcat.util.MimeTypes;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.StrUtil;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CachedResource is one static file of a Context as seen by ResourceCache.
+ *  It keeps the metadata DefaultServlet needs for every request: existence, length, lastModified, mime-type and ETag.
+ *  content holds the file bytes when the file is small enough to be cached, otherwise it is null and the file is
+ *  read from disk. ResourceCache only keeps existing files, so requests for random missing paths cannot fill it.
+ *  Encoded variants:
+ *  - encodedContents: the content compressed once per coding and level by ResourceCache and reused for every
+ *    request. A changed file is loaded as a new CachedResource, so a variant always belongs to one length and
+ *    lastModified.
+ *  - gzipSibling / brotliSibling: a.css.gz and a.css.br next to a.css, compressed ahead of time. They are only
+ *    used while they are not older than the file itself. Loading a file only looks up their length and
+ *    lastModified; their content is read by ResourceCache.getSibling when one is actually served.
+ */
+public class CachedResource {
+    private final String path;          // path relative to docBase, key in ResourceCache
+    private final File file;            // file on disk
+    private final boolean exists;       // whether file exists and is a normal file
+    private final long length;          // file length in bytes
+    private final long lastModified;    // file last modified time in ms
+    private final String mimeType;      // mime-type from the context's MimeTypes
+    private final String eTag;          // weak ETag: W/"length-lastModified"
+    private final byte[] content;       // file content, null if not cached
+    private volatile long nextCheck;    // time in ms after which lastModified is compared with the disk again
+    private volatile Map<String, byte[]> encodedContents;  // key: coding-level, e.g. gzip-6, null until first needed
+    private volatile CachedResource gzipSibling;   // file.gz, null for a missing file or a sibling itself
+    private volatile CachedResource brotliSibling; // file.br, null for a missing file or a sibling itself
+
+    /**
+     * load a resource from disk, and length and lastModified of its pre-compressed siblings
+     * @param path: path relative to docBase
+     * @param file: file
+     * @param mimeTypes: mime types of the context
+     * @param maxObjectSize: max length in bytes of a file whose content is cached
+     * @param nextCheck: time of the next revalidation
+     */
+    CachedResource(String path, File file, MimeTypes mimeTypes, long maxObjectSize, long nextCheck) {
+        this(path, file, mimeTypes, maxObjectSize, nextCheck, true);
+    }
+
+    private CachedResource(String path, File file, MimeTypes mimeTypes, long maxObjectSize, long nextCheck, boolean loadSiblings) {
+        this.path = path;
+        this.file = file;
+        this.exists = file.isFile();
+        this.length = exists ? file.length() : 0;
+        this.lastModified = exists ? file.lastModified() : 0;
+        this.mimeType = mimeTypes.getMimeTypeOrDefault(FileUtil.extName(file));
+        this.eTag = StrUtil.format("W/\"{}-{}\"", length, lastModified);
+        this.content = exists && length <= maxObjectSize ? FileUtil.readBytes(file) : null;
+        this.nextCheck = nextCheck;
+        boolean withSiblings = loadSiblings && exists;
+        this.gzipSibling = withSiblings ? loadSibling(".gz", mimeTypes, 0) : null;
+        this.brotliSibling = withSiblings ? loadSibling(".br", mimeTypes, 0) : null;
+    }
+
+    private CachedResource loadSibling(String extension, MimeTypes mimeTypes, long maxObjectSize) {
+        return new CachedResource(path + extension, new File(file.getPath() + extension), mimeTypes, maxObjectSize, nextCheck, false);
+    }
+
+    /**
+     * load the content of a pre-compressed sibling. Called by ResourceCache, which replaces the sibling with
+     * its lock held.
+     * @param encoding: gzip or br
+     * @param mimeTypes: mime types of the context
+     * @param maxObjectSize: max length in bytes of a file whose content is cached
+     * @return sibling with content
+     */
+    CachedResource loadSiblingContent(String encoding, MimeTypes mimeTypes, long maxObjectSize) {
+        return loadSibling("br".equals(encoding) ? ".br" : ".gz", mimeTypes, maxObjectSize);
+    }
+
+    /**
+     * replace a pre-compressed sibling. Called by ResourceCache with its lock held.
+     * @param encoding: gzip or br
+     * @param sibling: sibling
+     */
+    void setSibling(String encoding, CachedResource sibling) {
+        if ("br".equals(encoding)) {
+            brotliSibling = sibling;
+        } else {
+            gzipSibling = sibling;
+        }
+    }
+
+    /**
+     * check whether the file on disk still matches this resource
+     * @return true if existence, length and lastModified of the file and its siblings are unchanged
+     */
+    boolean isValid() {
+        if (!exists) {
+            return !file.exists();
+        }
+        CachedResource gzip = gzipSibling;
+        CachedResource brotli = brotliSibling;
+        return file.lastModified() == lastModified && file.length() == length
+                && (gzip == null || gzip.isValid())
+                && (brotli == null || brotli.isValid());
+    }
+
+    long getNextCheck() {
+        return nextCheck;
+    }
+
+    void setNextCheck(long nextCheck) {
+        this.nextCheck = nextCheck;
+    }
+
+    /**
+     * memory used by this resource in the cache
+     * @return length of cached content, gzip variant and sibling contents
+     */
+    long getCachedSize() {
+        long size = content == null ? 0 : content.length;
+        Map<String, byte[]> encoded = encodedContents;
+        if (encoded != null) {
+            for (byte[] variant : encoded.values()) {
+                size += variant.length;
+            }
+        }
+        CachedResource gzip = gzipSibling;
+        CachedResource brotli = brotliSibling;
+        if (gzip != null) {
+            size += gzip.getCachedSize();
+        }
+        if (brotli != null) {
+            size += brotli.getCachedSize();
+        }
+        return size;
+    }
+
+    /**
+     * @param key: coding-level
+     * @return encoded content, null if not cached
+     */
+    byte[] getEncodedContent(String key) {
+        Map<String, byte[]> encoded = encodedContents;
+        return encoded == null ? null : encoded.get(key);
+    }
+
+    /**
+     * keep an encoded variant. Called by ResourceCache with its lock held.
+     * @param key: coding-level
+     * @param content: encoded content
+     */
+    void putEncodedContent(String key, byte[] content) {
+        if (encodedContents == null) {
+            encodedContents = new ConcurrentHashMap<>(4);
+        }
+        encodedContents.put(key, content);
+    }
+
+    /**
+     * pre-compressed sibling of this file, its content is only loaded once ResourceCache.getSibling served it
+     * @param encoding: gzip or br
+     * @return sibling, or null if it does not exist or is older than the file
+     */
+    public CachedResource getSibling(String encoding) {
+        CachedResource sibling = "br".equals(encoding) ? brotliSibling : "gzip".equals(encoding) ? gzipSibling : null;
+        if (sibling == null || !sibling.exists() || sibling.getLastModified() < lastModified) {
+            return null;
+        }
+        return sibling;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean exists() {
+        return exists;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    /**
+     * ETag of an encoded variant: differs from the ETag of the file, so caches do not mix the representations
+     * @param encoding: content coding, e.g. gzip
+     * @return e.g. W/"1234-1577836800000-gzip"
+     */
+    public String getETag(String encoding) {
+        return StrUtil.format("W/\"{}-{}-{}\"", length, lastModified, encoding);
+    }
+
+    /**
+     * file content
+     * @return cached bytes, or bytes read from disk if the file is too large to be cached
+     */
+    public byte[] getContent() {
+        if (content != null) {
+            return content;
+        }
+        return exists ? FileUtil.readBytes(file) : null;
+    }
+
+    public boolean isContentCached() {
+        return content != null;
+    }
+}
@@ -1,13 +1,23 @@
 package SimpleTomcat.catalina;
 
+import SimpleTomcat.compression.ContentEncoder;
+import SimpleTomcat.compression.CompressionPolicy;
+import SimpleTomcat.exception.BadRequestException;
+import SimpleTomcat.http.HttpRequestParser;
 import SimpleTomcat.http.Request;
 import SimpleTomcat.http.Response;
-import SimpleTomcat.util.ThreadPoolUtil;
+import SimpleTomcat.util.Constant;
+import cn.hutool.core.util.StrUtil;
 import cn.hutool.log.LogFactory;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Connector Object is used for listening on multiple ports
@@ -22,6 +32,18 @@ public class Connector implements Runnable {
     private int compressionMinSize;         // minimal compression size
     private String noCompressionUserAgents; // browser user can not use compression
     private String compressionMimeType;     // MimeType stands for file type. This is indicate which file can be compressed
+    private int compressionMaxSize = -1;    // maximal compression size, -1 means no limit
+    private int compressionLevel = -1;      // compression level 1 (fast) to 9 (small), -1 is the default of the coding
+    private List<String> compressionEncodings = Arrays.asList("br", "gzip", "deflate"); // content codings, preferred first
+    private CompressionPolicy compressionPolicy;    // compression attributes above, compiled by init()
+    private String protocol = "bio";        // protocol: bio (blocking ServerSocket) or nio (Selector based NioEndpoint)
+    private int connectionTimeout = 20000;  // ms a connection may stay idle before a complete request arrives
+    private int keepAliveTimeout = 20000;   // ms a keep-alive connection may stay idle between two requests
+    private int maxKeepAliveRequests = 100; // max requests served on one connection. 1 disables keep-alive, -1 means no limit
+    private int maxPostSize = 2097152;      // max request body in bytes (2 MB), larger requests get 413. -1 means no limit
+    private NioEndpoint nioEndpoint;        // nio endpoint, only created when protocol is nio
+    private StandardThreadExecutor executor;// worker pool: <Executor> in <Connector>, defaults if absent
+    private String executorType = "platform"; // executor attribute: platform (thread pool) or virtual (virtual thread per connection)
 
     public Connector() {
     }
@@ -80,6 +102,35 @@ public class Connector implements Runnable {
         this.noCompressionUserAgents = noCompressionUserAgents;
     }
 
+    public int getCompressionMaxSize() {
+        return compressionMaxSize;
+    }
+
+    public void setCompressionMaxSize(int compressionMaxSize) {
+        this.compressionMaxSize = compressionMaxSize;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public List<String> getCompressionEncodings() {
+        return compressionEncodings;
+    }
+
+    /**
+     * set content codings used for compression. Codings without an encoder (e.g. br without a plugged in encoder)
+     * are skipped when negotiating.
+     * @param compressionEncodings: comma separated, preferred first, e.g. br,gzip,deflate
+     */
+    public void setCompressionEncodings(String compressionEncodings) {
+        this.compressionEncodings = StrUtil.splitTrim(compressionEncodings, ',');
+    }
+
     public String getCompressionMimeType() {
         return compressionMimeType;
     }
@@ -88,59 +139,252 @@ public class Connector implements Runnable {
         this.compressionMimeType = compressionMimeType;
     }
 
+    public String getProtocol() {
+        return protocol;
+    }
+
+    public void setProtocol(String protocol) {
+        this.protocol = protocol;
+    }
+
+    public int getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    public void setConnectionTimeout(int connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    public int getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+
+    public void setKeepAliveTimeout(int keepAliveTimeout) {
+        this.keepAliveTimeout = keepAliveTimeout;
+    }
+
+    public int getMaxKeepAliveRequests() {
+        return maxKeepAliveRequests;
+    }
+
+    public void setMaxKeepAliveRequests(int maxKeepAliveRequests) {
+        this.maxKeepAliveRequests = maxKeepAliveRequests;
+    }
+
+    public int getMaxPostSize() {
+        return maxPostSize;
+    }
+
+    public void setMaxPostSize(int maxPostSize) {
+        this.maxPostSize = maxPostSize;
+    }
+
+    public StandardThreadExecutor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(StandardThreadExecutor executor) {
+        this.executor = executor;
+    }
+
+    public String getExecutorType() {
+        return executorType;
+    }
+
+    public void setExecutorType(String executorType) {
+        this.executorType = executorType;
+    }
+
+    /**
+     * choose the content coding of a response body, see CompressionPolicy
+     * @param request: request
+     * @param response: response
+     * @param length: body length, -1 if unknown because the body is streamed
+     * @return encoder, null if the body is sent as it is
+     */
+    public ContentEncoder getContentEncoder(Request request, Response response, long length) {
+        return compressionPolicy.getContentEncoder(request, response, length);
+    }
+
+    public CompressionPolicy getCompressionPolicy() {
+        return compressionPolicy;
+    }
+
+    /**
+     * check whether this connector uses the selector based NioEndpoint
+     * @return true if protocol is nio
+     */
+    public boolean isNio() {
+        return "nio".equalsIgnoreCase(protocol);
+    }
+
     /**
      * init connector
      */
     public void init() {
-        LogFactory.get().info("Initializing ProtocolHandler [http-bio-{}]", this.port);
+        LogFactory.get().info("Initializing ProtocolHandler [http-{}-{}]", isNio() ? "nio" : "bio", this.port);
+        if (executor == null) {
+            executor = new StandardThreadExecutor();
+        }
+        compressionPolicy = new CompressionPolicy(compression, compressionMinSize, compressionMaxSize, compressionLevel,
+                compressionMimeType, noCompressionUserAgents, compressionEncodings);
+        executor.setNamePrefix(StrUtil.format("http-{}-{}", isNio() ? "nio" : "bio", this.port));
+        executor.setVirtual("virtual".equalsIgnoreCase(executorType));
+        if (executor.isVirtual()) {
+            LogFactory.get().info("Executor [{}] virtual thread per task", executor.getNamePrefix());
+        } else {
+            LogFactory.get().info("Executor [{}] minSpareThreads={}, maxThreads={}, maxQueueSize={}, rejectionPolicy={}",
+                    executor.getNamePrefix(), executor.getMinSpareThreads(), executor.getMaxThreads(),
+                    executor.getMaxQueueSize(), executor.getRejectionPolicy());
+        }
+        LogFactory.get().info("Compression [{}] {}", executor.getNamePrefix(), compressionPolicy);
     }
 
     /**
      * start process
-     * init. a new thread and start it
+     * bio: init. a new thread running the accept loop and start it
+     * nio: start NioEndpoint's acceptor and poller
      */
     public void start() {
-        LogFactory.get().info("Starting ProtocolHandler [http-bio-{}]", this.port);
+        LogFactory.get().info("Starting ProtocolHandler [http-{}-{}]", isNio() ? "nio" : "bio", this.port);
+        executor.start();
+        if (isNio()) {
+            try {
+                nioEndpoint = new NioEndpoint(this);
+                nioEndpoint.start();
+            } catch (IOException ioe) {
+                LogFactory.get().error(ioe);
+                ioe.printStackTrace();
+            }
+            return;
+        }
         new Thread(this).start();
     }
 
+    /**
+     * process one request on a socket
+     * @param socket: socket
+     * @param requestParser: parser of the connection holding a completely parsed request
+     * @param servedRequests: number of requests served on this connection, including this one
+     * @return true if the connection stays open for the next request
+     */
+    boolean process(Socket socket, HttpRequestParser requestParser, int servedRequests) {
+        Request request = new Request(socket, this, requestParser);
+        // bytes of a pipelined request stay in the parser
+        requestParser.recycle();
+        if (maxKeepAliveRequests > 0 && servedRequests >= maxKeepAliveRequests) {
+            request.setKeepAlive(false);
+        }
+        Response response = new Response(request);
+        HttpProcessor processor = new HttpProcessor();
+        processor.execute(socket, request, response);
+        return request.isKeepAlive() && !socket.isClosed();
+    }
+
+    /**
+     * answer a connection which can not be served because the executor is exhausted, then close it.
+     *  rejectionPolicy 503: send 503 Service Unavailable with Connection: close
+     *  rejectionPolicy close: close without answer
+     * @param socket: socket
+     */
+    void reject(Socket socket) {
+        LogFactory.get().warn("Connection rejected: {}", executor);
+        try {
+            if (StandardThreadExecutor.REJECT_503.equals(executor.getRejectionPolicy())) {
+                String body = Constant.html_503;
+                int contentLength = body.getBytes(StandardCharsets.UTF_8).length;
+                String head = StrUtil.format(Constant.response_head_503,
+                        StrUtil.format(Constant.response_header_framing, contentLength, "close"));
+                OutputStream outputStream = socket.getOutputStream();
+                outputStream.write((head + body).getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+            }
+        } catch (IOException e) {
+            // client is gone
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * blocking connection loop: read and process requests on the same socket until the client closes it,
+     * a request asks for Connection: close, maxKeepAliveRequests is reached or keepAliveTimeout expires
+     * @param socket: socket
+     */
+    private void processConnection(Socket socket) {
+        HttpRequestParser requestParser = new HttpRequestParser(maxPostSize);
+        int servedRequests = 0;
+        try {
+            socket.setSoTimeout(connectionTimeout);
+            while (true) {
+                while (!requestParser.parse()) {
+                    if (!requestParser.fill(socket.getInputStream())) {
+                        return;
+                    }
+                }
+                servedRequests++;
+                if (!process(socket, requestParser, servedRequests)) {
+                    return;
+                }
+                socket.setSoTimeout(keepAliveTimeout);
+            }
+        } catch (SocketTimeoutException e) {
+            // idle connection, close it
+        } catch (BadRequestException e) {
+            LogFactory.get().warn(e.getMessage());
+            try {
+                socket.getOutputStream().write(e.getResponse().getBytes(StandardCharsets.UTF_8));
+            } catch (IOException ioe) {
+                // client is gone
+            }
+        } catch (IOException e) {
+            LogFactory.get().error(e);
+        } finally {
+            if (!socket.isClosed()) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
     /**
      * run connector
      */
     @Override
     public void run() {
+        ServerSocket serverSocket;
         try {
             // Define a server socket
-            ServerSocket serverSocket = new ServerSocket(port);
+            serverSocket = new ServerSocket(port);
+        } catch (IOException ioe) {
+            LogFactory.get().error(ioe);
+            ioe.printStackTrace();
+            return;
+        }
 
-            while (true) {
+        while (true) {
+            try {
                 Socket socket = serverSocket.accept();
                 Runnable runnable = new Runnable() {
                     @Override
                     public void run() {
-                        try {
-                            Request request = new Request(socket, Connector.this);
-                            Response response = new Response();
-                            HttpProcessor processor = new HttpProcessor();
-                            processor.execute(socket, request, response);
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        } finally {
-                            if (!socket.isClosed()) {
-                                try {
-                                    socket.close();
-                                } catch (IOException e) {
-                                    e.printStackTrace();
-                                }
-                            }
-                        }
+                        processConnection(socket);
                     }
                 };
-                ThreadPoolUtil.run(runnable);
+                if (!executor.execute(runnable)) {
+                    reject(socket);
+                }
+            } catch (IOException ioe) {
+                // a failed accept (e.g. too many open files) must not end the accept loop
+                LogFactory.get().error(ioe);
             }
-        } catch (IOException ioe) {
-            LogFactory.get().error(ioe);
-            ioe.printStackTrace();
         }
     }
 
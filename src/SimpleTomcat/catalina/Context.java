@@ -1,10 +1,14 @@
 package SimpleTomcat.catalina;
 
+import SimpleTomcat.classloader.JspClassLoader;
 import SimpleTomcat.classloader.WebappClassLoader;
 import SimpleTomcat.exception.WebConfigException;
 import SimpleTomcat.http.ApplicationContext;
 import SimpleTomcat.http.StandardServletConfig;
 import SimpleTomcat.monitor.ContextFileChangeMonitor;
+import SimpleTomcat.servlet.JspServletWrapper;
+import SimpleTomcat.util.JspTranslateUtil;
+import SimpleTomcat.util.MimeTypes;
 import SimpleTomcat.util.XMLParser;
 import cn.hutool.core.date.DateUtil;
 import cn.hutool.core.date.TimeInterval;
@@ -23,7 +27,14 @@ import org.jsoup.select.Elements;
 import javax.servlet.*;
 import javax.servlet.http.HttpServlet;
 import java.io.File;
+import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Context object is used to store web services information:
@@ -36,6 +47,7 @@ import java.util.*;
  * -webXmlFile: the file that shows servlet services (often are get and post requests from html ) are provided
  */
 public class Context {
+
     private String path;                                        // the path used to access
     private String docBase;                                     // the location of web application in the system
     private File webXmlFile;                                    // web.xml under WEB-INF directory
@@ -44,6 +56,7 @@ public class Context {
     private Map<String, String> servletClassToNameMap;          // map servlet class to name. key: class, value: name
     private Map<String, String> servletUrlToNameMap;            // map servlet url to name. key: url, value: name
     private Map<String, String> servletUrlToClassMap;           // map servlet url to class. key: url, value: name
+    private final UrlMapper<String> servletMapper = new UrlMapper<>(); // resolves a uri to the url-pattern of its servlet
     private Map<String, Map<String, String>> servletInitParams; // servlet initialization configuration parameters. key: name, value: (Map) initParam (key: param-name, value: param-value)
     private List<String> loadOnStartupServletClassName;         // load on startup property
 
@@ -52,7 +65,12 @@ public class Context {
     private Boolean reloadable;                                 // reloadable: whether context is reloadable
     private Host host;                                          // Host of this context
     private ServletContext servletContext;                      // servlet context
-    private Map<Class<?>, HttpServlet> servletPool;             // servlet pool
+    private Map<Class<?>, CompletableFuture<HttpServlet>> servletPool; // servlet pool: servlet class -> servlet, completed once init() has run
+    private final Map<String, HttpServlet> servletDispatchTable = new ConcurrentHashMap<>(); // servlet url-pattern -> initialized servlet
+    private ResourceCache resourceCache;                        // cache of static files served by DefaultServlet
+    private MimeTypes mimeTypes = MimeTypes.getServerMimeTypes(); // conf/web.xml mime mappings with those of web.xml on top
+    private List<String> welcomeFiles = XMLParser.getWelcomeFiles();  // welcome files of conf/web.xml, or of web.xml if it has any
+    private final Map<String, String> welcomeFileCache = new ConcurrentHashMap<>(); // directory uri -> resolved welcome file uri
 
     private Map<String, List<String>> url_filterClassNames;     // map url to filter classes: key: url, value: filterClasses' name (classes url need to travel)
     private Map<String, List<String>> url_filterNames;          // map url to filter names: key: url, value: filters' names (classes url need to travel)
@@ -60,18 +78,49 @@ public class Context {
     private Map<String, String> filterClassName_filterName;     // map filter class name to filter name: key: filter class name, value: filter name
     private Map<String, Map<String, String>> filterClassName_initParams; // map filter_name to class name and init params;
     private Map<String, Filter> filterPool;                     // filter pool
+    private final UrlMapper<Integer> filterMapper = new UrlMapper<>(); // resolves a uri to the indexes of its filter-mappings
+    private final List<String> filterMappingClassNames = new ArrayList<>(); // filter class of each filter-mapping, in web.xml order
+    private final Map<UrlMapper.MatchKey<Integer>, List<Filter>> filterChainCache = new ConcurrentHashMap<>(); // matched filter-mappings -> matched filters
 
     private List<ServletContextListener> listeners;             // context listeners
 
+    private final boolean lazy;                                 // deploy on the first request instead of at startup
+    private final long idleTimeout;                             // ms without requests after which a lazy context is unloaded, 0: never
+    private final ClassLoader commonClassLoader;                // parent of webappClassLoader
+    private final Lock deployLock = new ReentrantLock();        // held while the context is deployed or unloaded
+    private volatile boolean deployed;                          // deploy() has run
+    private boolean precompileJsp;                              // compile all jsp files when the context deploys
+    private long jspCheckInterval;                              // s between checks of a jsp for changes, 0: on every request
+    private final Map<String, JspServletWrapper> jspServletWrappers = new ConcurrentHashMap<>(); // jsp uri -> resolved servlet
+    private final Map<String, JspClassLoader> jspClassLoaders = new ConcurrentHashMap<>();  // jsp uri -> class loader of its compiled class
+    private long unloadDelay = 2000;                            // ms a retired context waits for requests in flight before it stops
+    private volatile boolean retired;                           // reloaded or unloaded: requests have to use the replacement in Host
+    private final AtomicInteger activeRequests = new AtomicInteger();  // requests between acquire and release
+    private volatile long lastAccessTime = System.currentTimeMillis(); // end of the last request
+
     /**
-     * constructor
+     * constructor: deploy the context now
      * @param path: url path
      * @param docBase: system file directory
      */
     public Context(String path, String docBase, Boolean reloadable, Host host) {
+        this(path, docBase, reloadable, host, false, 0);
+        start();
+    }
+
+    /**
+     * constructor: the context is deployed by start(), after the setters of its other settings
+     *  A lazy context only records path and docBase. web.xml, class loader, filters, load-on-startup servlets
+     *  and the file monitor are set up by its first request, see acquire().
+     * @param path: url path
+     * @param docBase: system file directory
+     * @param lazy: deploy on the first request
+     * @param idleTimeout: ms without requests after which a lazy context is unloaded, 0: never
+     */
+    public Context(String path, String docBase, Boolean reloadable, Host host, boolean lazy, long idleTimeout) {
         this.path = path;
         this.docBase = docBase;
-        this.webXmlFile = new File(docBase, XMLParser.getWatchedResource());
+        this.webXmlFile = new File(docBase, host.getServerConfig().getWatchedResource());
         this.servletNameToClassMap = new HashMap<>();
         this.servletClassToNameMap = new HashMap<>();
         this.servletUrlToNameMap = new HashMap<>();
@@ -80,7 +129,8 @@ public class Context {
         this.reloadable = reloadable;
         this.host = host;
         this.servletContext = new ApplicationContext(this);
-        this.servletPool = new HashMap<>();
+        this.servletPool = new ConcurrentHashMap<>();
+        this.resourceCache = ResourceCache.create(docBase, host.getServerConfig().getResources());
         this.loadOnStartupServletClassName = new ArrayList<>();
         this.url_filterClassNames = new HashMap<>();
         this.url_filterNames = new HashMap<>();
@@ -90,38 +140,204 @@ public class Context {
         this.filterPool = new HashMap<>();
         this.listeners=new ArrayList<ServletContextListener>();
 
-        ClassLoader commonClassLoader = Thread.currentThread().getContextClassLoader();
-        this.webappClassLoader = new WebappClassLoader(docBase, commonClassLoader);
-
+        // the deploying thread of a lazy context is a request thread, so the parent is taken now
+        this.commonClassLoader = Thread.currentThread().getContextClassLoader();
+        this.lazy = lazy;
+        this.idleTimeout = lazy ? idleTimeout : 0;
+    }
 
+    /**
+     * start the context: deploy it now, or on its first request if it is lazy
+     */
+    public void start() {
+        if (lazy) {
+            LogFactory.get().info("Web application directory {} will be deployed on its first request", this.docBase);
+            return;
+        }
         deploy();
+        deployed = true;
+    }
+
+    /**
+     * A request starts to use this context: deploy it if it is lazy and not deployed yet.
+     *  Concurrent first requests wait for one deployment. Every successful acquire has to be followed by release().
+     * @return false if the context has been retired (reloaded or unloaded), the request has to look up its
+     *  replacement in the Host
+     */
+    public boolean acquire() {
+        activeRequests.incrementAndGet();
+        if (retired) {
+            activeRequests.decrementAndGet();
+            // an idle unload puts the replacement into the Host while holding the lock
+            deployLock.lock();
+            deployLock.unlock();
+            return false;
+        }
+        // not retired yet: a retiring context waits for this request before it stops
+        if (!deployed) {
+            deployLock.lock();
+            try {
+                if (!deployed) {
+                    deploy();
+                    deployed = true;
+                }
+            } catch (RuntimeException e) {
+                activeRequests.decrementAndGet();
+                throw e;
+            } finally {
+                deployLock.unlock();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A request is done with this context
+     */
+    public void release() {
+        lastAccessTime = System.currentTimeMillis();
+        activeRequests.decrementAndGet();
+    }
+
+    /**
+     * @return a new context with the same settings, not deployed yet if it is lazy
+     */
+    Context createReplacement() {
+        Context context = new Context(path, docBase, reloadable, host, lazy, idleTimeout);
+        context.setUnloadDelay(unloadDelay);
+        context.setPrecompileJsp(precompileJsp);
+        context.setJspCheckInterval(jspCheckInterval);
+        context.start();
+        return context;
+    }
+
+    /**
+     * Take this context out of service after the Host has put its replacement into the map (blue/green reload).
+     *  New requests go to the replacement, requests in flight get up to unloadDelay ms to finish, then the web app
+     *  is stopped and its class loader closed.
+     */
+    void retire() {
+        retired = true;
+        long deadline = System.currentTimeMillis() + unloadDelay;
+        while (activeRequests.get() > 0 && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (activeRequests.get() > 0) {
+            LogFactory.get().warn("Web application directory {} is stopped with {} requests still running after {} ms",
+                    this.docBase, activeRequests.get(), unloadDelay);
+        }
+        deployLock.lock();
+        try {
+            stop();
+        } finally {
+            deployLock.unlock();
+        }
+    }
+
+    /**
+     * Unload a lazy context which had no request for idleTimeout ms: it is replaced in the Host by a new,
+     *  not deployed context, and stopped. A request arriving meanwhile either keeps the context (unloading is
+     *  given up) or waits and deploys the replacement.
+     * @param now: current time in ms
+     * @return true if the context has been unloaded
+     */
+    boolean unloadIfIdle(long now) {
+        if (idleTimeout <= 0 || !deployed || retired || activeRequests.get() > 0 || now - lastAccessTime < idleTimeout) {
+            return false;
+        }
+        deployLock.lock();
+        try {
+            retired = true;
+            if (activeRequests.get() > 0) {
+                retired = false;
+                return false;
+            }
+            if (!host.getContextMap().replace(path, this, createReplacement())) {
+                // reloaded meanwhile, the reload stops this context
+                return false;
+            }
+            stop();
+            LogFactory.get().info("Web application directory {} unloaded after {} ms without requests", this.docBase, now - lastAccessTime);
+            return true;
+        } finally {
+            deployLock.unlock();
+        }
     }
 
     /**
      * getHttpServlet(Class) method will return the corresponding servlet of input class.
      * If the class is not existed, it will add this mapping to the servlet pool.
-     * To prevent creating the same class-servlet mapping, the key word synchronized is used.
+     * The pool holds one future per servlet class. An initialized servlet is read from its completed future without
+     * any lock. The first request for a class puts a new future with putIfAbsent and creates and initializes the
+     * servlet itself; concurrent requests for the same class wait on that future, requests for other classes are not
+     * held up. So init() runs exactly once. If it fails, every waiting request gets the exception and the future is
+     * removed, so a later request tries again.
      * @param clazz: corresponding servlet class
      * @return HttpServlet
      * @throws InstantiationException: InstantiationException
      * @throws IllegalAccessException: IllegalAccessException
      * @throws ServletException: ServletException
      */
-    public synchronized HttpServlet getHttpServlet(Class<?> clazz) throws InstantiationException, IllegalAccessException, ServletException {
-        if (this.servletPool.containsKey(clazz)) {
-            return this.servletPool.get(clazz);
+    public HttpServlet getHttpServlet(Class<?> clazz) throws InstantiationException, IllegalAccessException, ServletException {
+        CompletableFuture<HttpServlet> future = this.servletPool.get(clazz);
+        if (future == null) {
+            CompletableFuture<HttpServlet> creation = new CompletableFuture<>();
+            future = this.servletPool.putIfAbsent(clazz, creation);
+            if (future == null) {
+                future = creation;
+                try {
+                    creation.complete(createHttpServlet(clazz));
+                } catch (Throwable t) {
+                    // whatever went wrong, waiting requests must not hang on the future and a later request tries again
+                    this.servletPool.remove(clazz, creation);
+                    creation.completeExceptionally(t);
+                }
+            }
         }
 
-        HttpServlet servlet = (HttpServlet) clazz.newInstance();
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InstantiationException) throw (InstantiationException) cause;
+            if (cause instanceof IllegalAccessException) throw (IllegalAccessException) cause;
+            if (cause instanceof ServletException) throw (ServletException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new ServletException(cause);
+        }
+    }
+
+    /**
+     * create a servlet and initialize it with its name and init params of web.xml
+     * @param clazz: servlet class
+     * @return HttpServlet
+     * @throws InstantiationException: InstantiationException
+     * @throws IllegalAccessException: IllegalAccessException
+     * @throws ServletException: ServletException
+     */
+    private HttpServlet createHttpServlet(Class<?> clazz) throws InstantiationException, IllegalAccessException, ServletException {
+        HttpServlet servlet;
+        try {
+            servlet = (HttpServlet) clazz.getDeclaredConstructor().newInstance();
+        } catch (NoSuchMethodException e) {
+            InstantiationException ie = new InstantiationException(clazz.getName() + " has no no-arg constructor");
+            ie.initCause(e);
+            throw ie;
+        } catch (InvocationTargetException e) {
+            throw new ServletException("constructor of " + clazz.getName() + " failed", e.getCause());
+        }
         ServletContext servletContext = this.getServletContext();
         String servletName = servletClassToNameMap.get(clazz.getName());        // servlet name
         Map<String, String> initParams = servletInitParams.get(servletName);    // servlet init params
 
         ServletConfig servletConfig = new StandardServletConfig(servletContext, servletName, initParams);
         servlet.init(servletConfig);            // init servlet using servletConfig
-
-        this.servletPool.put(clazz, servlet);
-
         return servlet;
     }
 
@@ -129,8 +345,14 @@ public class Context {
      * Stop context by stop webappClassLoader and contextFileChangeMonitor
      */
     public void stop() {
+        if (!deployed) {
+            return;
+        }
+        deployed = false;
         webappClassLoader.stop();
-        contextFileChangeMonitor.stop();
+        if (contextFileChangeMonitor != null) {
+            contextFileChangeMonitor.stop();
+        }
         destroyServlets();
         fireEvent("destory");
     }
@@ -146,6 +368,7 @@ public class Context {
      * Deploy web-app
      */
     private void deploy() {
+        this.webappClassLoader = new WebappClassLoader(docBase, commonClassLoader);
         loadListeners();
         TimeInterval timeInterval = DateUtil.timer();
         LogFactory.get().info("Deploying web application directory {}", this.docBase);
@@ -155,6 +378,18 @@ public class Context {
         else LogFactory.get().info("Deployment of web application directory {} failed in {} ms",
                 this.docBase, timeInterval.intervalMs());
 
+        if (precompileJsp) {
+            timeInterval.restart();
+            int count = JspTranslateUtil.precompileJsps(this);
+            LogFactory.get().info("Precompiled {} jsp files of {} in {} ms", count, this.docBase, timeInterval.intervalMs());
+        }
+
+        if (resourceCache.isPrecompress()) {
+            timeInterval.restart();
+            int count = resourceCache.precompress();
+            LogFactory.get().info("Precompressed {} static resources of {} in {} ms", count, this.docBase, timeInterval.intervalMs());
+        }
+
         // Monitor classes and jars change in webapp
         if (reloadable) {
             contextFileChangeMonitor = new ContextFileChangeMonitor(this);
@@ -174,7 +409,13 @@ public class Context {
         for (String servletClassName : loadOnStartupServletClassName) {
             try {
                 Class<?> clazz = webappClassLoader.loadClass(servletClassName);
-                getHttpServlet(clazz);
+                HttpServlet servlet = getHttpServlet(clazz);
+                // urls of the servlet dispatch to it without a lookup
+                for (Map.Entry<String, String> entry : servletUrlToClassMap.entrySet()) {
+                    if (entry.getValue().equals(servletClassName)) {
+                        servletDispatchTable.put(entry.getKey(), servlet);
+                    }
+                }
             } catch (ClassNotFoundException | InstantiationException | IllegalAccessException | ServletException e) {
                 e.printStackTrace();
             }
@@ -196,6 +437,10 @@ public class Context {
             String webXml = FileUtil.readUtf8String(webXmlFile);
             Document document = Jsoup.parse(webXml);
 
+            // parse mime mappings
+            parseMimeMapping(document);
+            // parse welcome files
+            parseWelcomeFiles(document);
             // parse servlet mapping
             parseServletMapping(document);
             // parse filter mapping
@@ -221,6 +466,26 @@ public class Context {
         return true;
     }
 
+    /**
+     * Parse <mime-mapping> of web.xml: they replace the mappings of conf/web.xml for this context only
+     * @param document: web.xml file
+     */
+    private void parseMimeMapping(Document document) {
+        this.mimeTypes = MimeTypes.getServerMimeTypes().withMappings(MimeTypes.parse(document));
+        this.resourceCache.setMimeTypes(this.mimeTypes);
+    }
+
+    /**
+     * Parse <welcome-file-list> of web.xml: if it has one, it replaces the list of conf/web.xml
+     * @param document: web.xml file
+     */
+    private void parseWelcomeFiles(Document document) {
+        List<String> contextWelcomeFiles = XMLParser.parseWelcomeFiles(document);
+        if (!contextWelcomeFiles.isEmpty()) {
+            this.welcomeFiles = Collections.unmodifiableList(contextWelcomeFiles);
+        }
+    }
+
     /**
      * Parse web.xml file to servlets' map:
      *  This method aims to parse the servlet definition and the servlet-mapping definition.
@@ -274,6 +539,7 @@ public class Context {
             else throw new WebConfigException(
                     StrUtil.format("servlet-url: {} duplicated. The servlet-url has to be unique.",
                             servletName));
+            servletMapper.add(urlPattern, urlPattern);
         }
     }
 
@@ -401,6 +667,8 @@ public class Context {
                 url_filterClassNames.put(url, classNames);
             }
 
+            filterMapper.add(url, filterMappingClassNames.size());
+            filterMappingClassNames.add(filterClass);
         }
     }
 
@@ -460,9 +728,12 @@ public class Context {
      * destroy servlets in the servlet pool
      */
     private void destroyServlets() {
-        Collection<HttpServlet> servlets = servletPool.values();
-        for (HttpServlet servlet : servlets) {
-            servlet.destroy();
+        for (CompletableFuture<HttpServlet> future : servletPool.values()) {
+            // servlets whose init() failed or is still running are not destroyed
+            HttpServlet servlet = future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+            if (servlet != null) {
+                servlet.destroy();
+            }
         }
     }
 
@@ -498,6 +769,40 @@ public class Context {
         return servletUrlToNameMap;
     }
 
+    /**
+     * get the welcome file of a directory: the first welcome file which exists in it.
+     *  The result is cached per directory. A cached welcome file is used as long as the resource cache still finds it,
+     *  so neither web.xml nor the disk is read for a request to a directory. A reload starts with an empty cache.
+     *  Only directories which have a welcome file are cached, a client cannot fill the cache with made up uris.
+     * @param directory: directory uri relative to the context, ends with /, e.g. / or /docs/
+     * @return uri of the welcome file, e.g. /index.html, or directory + index.html if no welcome file exists
+     */
+    public String getWelcomeFile(String directory) {
+        String welcomeFile = welcomeFileCache.get(directory);
+        if (welcomeFile != null && resourceCache.getResource(welcomeFile.substring(1)).exists()) {
+            return welcomeFile;
+        }
+
+        for (String welcomeFileName : welcomeFiles) {
+            welcomeFile = directory + welcomeFileName;
+            if (resourceCache.getResource(welcomeFile.substring(1)).exists()) {
+                welcomeFileCache.put(directory, welcomeFile);
+                return welcomeFile;
+            }
+        }
+        welcomeFileCache.remove(directory);
+        // if no file found, return index.html
+        return directory + "index.html";
+    }
+
+    public MimeTypes getMimeTypes() {
+        return mimeTypes;
+    }
+
+    public ResourceCache getResourceCache() {
+        return resourceCache;
+    }
+
     public WebappClassLoader getWebappClassLoader() {
         return webappClassLoader;
     }
@@ -527,23 +832,50 @@ public class Context {
     }
 
     /**
-     * Get servlet class by servlet url
-     * @param url: servlet url
+     * Get servlet class by url: the servlet of the best matching url-pattern, see UrlMapper.map
+     * @param url: url within the context
      * @return servlet class or null
      */
     public String getServletClassByUrl(String url) {
-        if (this.servletUrlToClassMap.containsKey(url)) return servletUrlToClassMap.get(url);
-        return null;
+        String pattern = servletMapper.map(url);
+        return pattern == null ? null : servletUrlToClassMap.get(pattern);
+    }
+
+    /**
+     * get the servlet mapped to a url, ready to be invoked.
+     *  The dispatch table is filled with the load-on-startup servlets at deploy time and with the others on their
+     *  first request, so later requests neither load a class nor touch the servlet pool. The table is keyed by
+     *  url-pattern, so prefix and extension mappings add one entry each, however many uris they match. A reloaded
+     *  context is a new Context with an empty table.
+     * @param url: url within the context
+     * @return servlet, null if no servlet is mapped to url
+     * @throws ClassNotFoundException: ClassNotFoundException
+     * @throws InstantiationException: InstantiationException
+     * @throws IllegalAccessException: IllegalAccessException
+     * @throws ServletException: servlet.init failed
+     */
+    public HttpServlet getServletByUrl(String url) throws ClassNotFoundException, InstantiationException, IllegalAccessException, ServletException {
+        String pattern = servletMapper.map(url);
+        if (pattern == null) {
+            return null;
+        }
+        HttpServlet servlet = servletDispatchTable.get(pattern);
+        if (servlet != null) {
+            return servlet;
+        }
+        servlet = getHttpServlet(webappClassLoader.loadClass(servletUrlToClassMap.get(pattern)));
+        servletDispatchTable.put(pattern, servlet);
+        return servlet;
     }
 
     /**
-     * Get servlet name by servlet url
-     * @param url: servlet url
+     * Get servlet name by url: the servlet of the best matching url-pattern, see UrlMapper.map
+     * @param url: url within the context
      * @return servlet name or null
      */
     public String getServletNameByUrl(String url) {
-        if (this.servletUrlToNameMap.containsKey(url)) return servletUrlToNameMap.get(url);
-        return null;
+        String pattern = servletMapper.map(url);
+        return pattern == null ? null : servletUrlToNameMap.get(pattern);
     }
 
     /**
@@ -562,60 +894,91 @@ public class Context {
         this.reloadable = reloadable;
     }
 
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public long getUnloadDelay() {
+        return unloadDelay;
+    }
+
+    public void setUnloadDelay(long unloadDelay) {
+        this.unloadDelay = unloadDelay;
+    }
+
+    public boolean isPrecompileJsp() {
+        return precompileJsp;
+    }
+
+    public void setPrecompileJsp(boolean precompileJsp) {
+        this.precompileJsp = precompileJsp;
+    }
+
+    public long getJspCheckInterval() {
+        return jspCheckInterval;
+    }
+
+    public void setJspCheckInterval(long jspCheckInterval) {
+        this.jspCheckInterval = jspCheckInterval;
+    }
+
     /**
-     * uriMatchFilterPattern: compare pattern with uri
-     * @param pattern: filter url-pattern
-     * @param uri: request url
-     * @return true or false
+     * @return servlets of the jsp files of this context resolved by JspServlet. key: uri, value: servlet
      */
-    private boolean uriMatchFilterPattern(String pattern, String uri) {
-        // completely match
-        if (StrUtil.equals(pattern, uri)) {
-            return true;
-        }
-
-        // /* pattern
-        if (StrUtil.equals(pattern, "/*")) {
-            return true;
-        }
+    public Map<String, JspServletWrapper> getJspServletWrappers() {
+        return jspServletWrappers;
+    }
 
-        // suffix match
-        if (StrUtil.startWith(pattern, "/*.")) {
-            String patternExtName = StrUtil.subAfter(pattern, '.', false);
-            String uriExtName = StrUtil.subAfter(uri, '.', false);
-            if (StrUtil.equals(patternExtName, uriExtName)) {
-                return true;
-            }
-        }
+    /**
+     * @return class loaders of the compiled jsp files of this context, see JspClassLoader.getJspClassLoader
+     */
+    public Map<String, JspClassLoader> getJspClassLoaders() {
+        return jspClassLoaders;
+    }
 
-        return false;
+    /**
+     * @return true if web.xml, class loader and servlets are set up, false for a lazy context before its first request
+     */
+    public boolean isDeployed() {
+        return deployed;
     }
 
     /**
-     * get matched filters
+     * get matched filters: the filters of every filter-mapping matching uri, in the order of their filter-mapping
+     *  in web.xml, each filter once. The list is immutable and cached per set of matching filter-mappings rather
+     *  than per uri, so uris matching the same mappings share one chain and the cache is bounded by web.xml, not by
+     *  the uris clients send; a reloaded context is a new Context with an empty cache.
      * @param uri: request uri
-     * @return
+     * @return matched filters
      */
     public List<Filter> getMatchedFilters(String uri) {
-        List<Filter> filters = new ArrayList<>();
-        Set<String> patterns = url_filterClassNames.keySet();
-        Set<String> matchedPatterns = new HashSet<>();
-        for (String pattern : patterns) {
-            if (uriMatchFilterPattern(pattern, uri)) {
-                matchedPatterns.add(pattern);
-            }
+        UrlMapper.MatchKey<Integer> key = filterMapper.matchKey(uri);
+        List<Filter> filters = filterChainCache.get(key);
+        if (filters != null) {
+            return filters;
         }
 
-        Set<String> matchedFilterClassNames = new HashSet<>();
-        for (String pattern : matchedPatterns) {
-            List<String> filterClassName = url_filterClassNames.get(pattern);
-            matchedFilterClassNames.addAll(filterClassName);
+        List<Integer> mappingIndexes = new ArrayList<>();
+        filterMapper.matchAll(key, mappingIndexes);
+        Collections.sort(mappingIndexes);
+        Set<String> matchedFilterClassNames = new LinkedHashSet<>();
+        for (Integer index : mappingIndexes) {
+            matchedFilterClassNames.add(filterMappingClassNames.get(index));
         }
+        List<Filter> matchedFilters = new ArrayList<>(matchedFilterClassNames.size());
         for (String filterClassName : matchedFilterClassNames) {
             Filter filter = filterPool.get(filterClassName);
-            filters.add(filter);
+            if (filter != null) {
+                matchedFilters.add(filter);
+            }
         }
 
+        filters = Collections.unmodifiableList(matchedFilters);
+        filterChainCache.put(key, filters);
         return filters;
     }
 
@@ -1,8 +1,10 @@
 package SimpleTomcat.catalina;
 
-import SimpleTomcat.util.XMLParser;
+import SimpleTomcat.config.HostConfig;
+import SimpleTomcat.config.ServerConfig;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -13,10 +15,13 @@ public class Engine {
     private List<Host> hosts;
     private Service service;
 
-    public Engine(Service service) {
+    public Engine(Service service, ServerConfig serverConfig) {
         this.service = service;
-        this.defaultHost = XMLParser.getEngineDefaultHost();
-        this.hosts = XMLParser.getHosts(this);
+        this.defaultHost = serverConfig.getDefaultHost();
+        this.hosts = new ArrayList<>();
+        for (HostConfig hostConfig : serverConfig.getHosts()) {
+            hosts.add(new Host(hostConfig, this));
+        }
         getDefaultHost();
     }
 
@@ -1,34 +1,53 @@
 package SimpleTomcat.catalina;
 
+import SimpleTomcat.config.ContextConfig;
+import SimpleTomcat.config.ElementConfig;
+import SimpleTomcat.config.HostConfig;
+import SimpleTomcat.config.ServerConfig;
 import SimpleTomcat.monitor.WarFileMonitor;
 import SimpleTomcat.util.Constant;
-import SimpleTomcat.util.XMLParser;
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.date.TimeInterval;
 import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.util.RuntimeUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.log.LogFactory;
 
 import java.io.File;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Host Object: Host 的意思是虚拟主机。 通常都是 localhost, 即表示本机。
+ *  Contexts are deployed in parallel at startup, see deployContexts.
  */
 public class Host {
+    private static final long MIN_IDLE_CHECK_PERIOD = 1000;    // idle contexts are checked at most every second
+    private static final long MAX_IDLE_CHECK_PERIOD = 60000;   // and at least every minute, so new contexts are picked up
+
     private String hostName;            // host name
-    private Map<String, Context> contextMap; // map path to Context
+    private Map<String, Context> contextMap; // map path to Context, read by request threads while contexts are reloaded
     private Engine engine;              // Engine: servlet request parser
+    private ScheduledExecutorService idleMonitor; // unloads idle lazy contexts, started by the first context with an idleTimeout
 
-    public Host(String hostName, Engine engine) {
-        this.hostName = hostName;
+    public Host(HostConfig hostConfig, Engine engine) {
+        this.hostName = hostConfig.getName();
         this.engine = engine;
-        this.contextMap = new HashMap<String, Context>();
+        this.contextMap = new ConcurrentHashMap<String, Context>();
 
-        scanContextsOnWebAppsFolder();
-        loadContextsInServerXML();
-        scanWarOnWebAppsFolder();
+        deployContexts(hostConfig);
 
         new WarFileMonitor(this).start();
     }
@@ -37,6 +56,13 @@ public class Host {
         return this.hostName;
     }
 
+    /**
+     * @return configuration of the server this host belongs to
+     */
+    public ServerConfig getServerConfig() {
+        return engine.getService().getServer().getServerConfig();
+    }
+
     public Map<String, Context> getContextMap() {
         return this.contextMap;
     }
@@ -46,96 +72,272 @@ public class Host {
     }
 
     /**
-     * Reload context. Find context in the contextMap and reload it
-     * @param context
+     * Reload context without downtime (blue/green): the new context is built and deployed next to the old one,
+     *  swapped into contextMap in one step, and the old one is stopped once its requests in flight are done or its
+     *  unloadDelay is over. Requests never see a missing context or a closed class loader. If the new context
+     *  cannot be built, the old one keeps serving.
+     *  Draining and stopping the old context happens on a thread of its own, so reload returns as soon as the new
+     *  context serves, whatever the old one's requests are doing.
+     * @param context: context to reload
      */
     public void reload(Context context) {
-        LogFactory.get().info("Reloading Context with name [{}] has started", context.getPath());
-
         String path = context.getPath();
-        String docBase = context.getDocBase();
-        boolean reloadable = context.isReloadable();
-        // stop
-        context.stop();
-        // remove
-        contextMap.remove(path);
-        // allocate new context
-        Context newContext = new Context(path, docBase, reloadable, this);
-        // assign it to map
-        contextMap.put(newContext.getPath(), newContext);
-        LogFactory.get().info("Reloading Context with name [{}] has completed", context.getPath());
+        LogFactory.get().info("Reloading Context with name [{}] has started", path);
+        TimeInterval timeInterval = DateUtil.timer();
+
+        Context newContext;
+        try {
+            newContext = context.createReplacement();
+            if (context.isDeployed() && newContext.acquire()) {
+                // a lazy context in use is deployed now, not by the next request
+                newContext.release();
+            }
+        } catch (RuntimeException e) {
+            LogFactory.get().error(e, "Reloading Context with name [{}] failed, the old context keeps serving", path);
+            return;
+        }
+
+        if (!contextMap.replace(path, context, newContext)) {
+            // unloaded or reloaded meanwhile
+            newContext.retire();
+            LogFactory.get().info("Reloading Context with name [{}] is skipped, it has been replaced meanwhile", path);
+            return;
+        }
+        Thread retireThread = new Thread(context::retire, hostName + "-retire-" + path);
+        retireThread.setDaemon(true);
+        retireThread.start();
+        LogFactory.get().info("Reloading Context with name [{}] has completed in {} ms", path, timeInterval.intervalMs());
     }
 
     /**
-     * Scan folders in webapps directory to get path-context map
+     * Deploy the contexts of this host on a pool of startStopThreads threads.
+     *  Contexts are collected first, by path: folders of webapps, then <Context> of server.xml (replacing a folder of
+     *  the same path), then war files which have no folder yet. Every Context parses its web.xml, creates its class
+     *  loader and runs its load-on-startup servlets in its own task, so startup takes about as long as the slowest
+     *  web app instead of the sum of all. A Context which fails is logged and left out, the others are deployed anyway.
+     * @param hostConfig: <Host> element
      */
-    private void scanContextsOnWebAppsFolder() {
+    private void deployContexts(HostConfig hostConfig) {
+        TimeInterval timeInterval = DateUtil.timer();
+        Map<String, Callable<Context>> deployments = new LinkedHashMap<>();    // path -> task creating its Context
+        scanContextsOnWebAppsFolder(deployments);
+        loadContextsInServerXML(hostConfig, deployments);
+        scanWarOnWebAppsFolder(deployments);
+        if (deployments.isEmpty()) {
+            return;
+        }
+
+        int threads = Math.min(getDeployThreads(hostConfig.getStartStopThreads()), deployments.size());
+        ExecutorService deployPool = Executors.newFixedThreadPool(threads, new DeployThreadFactory());
+        Map<String, Future<Context>> futures = new LinkedHashMap<>();
+        for (Map.Entry<String, Callable<Context>> deployment : deployments.entrySet()) {
+            futures.put(deployment.getKey(), deployPool.submit(deployment.getValue()));
+        }
+        deployPool.shutdown();
+
+        List<String> failedPaths = new ArrayList<>();
+        for (Map.Entry<String, Future<Context>> future : futures.entrySet()) {
+            try {
+                Context context = future.getValue().get();
+                this.contextMap.put(context.getPath(), context);
+            } catch (ExecutionException e) {
+                LogFactory.get().error(e.getCause(), "Deployment of context [{}] failed", future.getKey());
+                failedPaths.add(future.getKey());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                deployPool.shutdownNow();
+                failedPaths.add(future.getKey());
+            }
+        }
+
+        LogFactory.get().info("Host [{}] deployed {} of {} contexts in {} ms on {} threads", hostName,
+                contextMap.size(), deployments.size(), timeInterval.intervalMs(), threads);
+        if (!failedPaths.isEmpty()) {
+            LogFactory.get().warn("Host [{}] failed to deploy {}", hostName, failedPaths);
+        }
+    }
+
+    /**
+     * number of deploy threads, as startStopThreads of Tomcat
+     * @param startStopThreads: n > 0: n threads, 0: one per cpu, n < 0: one per cpu less n, at least one
+     * @return number of threads
+     */
+    private static int getDeployThreads(int startStopThreads) {
+        if (startStopThreads > 0) {
+            return startStopThreads;
+        }
+        return Math.max(Runtime.getRuntime().availableProcessors() + startStopThreads, 1);
+    }
+
+    /**
+     * Creates the deploy threads of a host. They get the context class loader of the thread creating the host
+     *  (the CommonClassLoader), which every Context uses as parent of its WebappClassLoader.
+     */
+    private class DeployThreadFactory implements ThreadFactory {
+        private final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, hostName + "-deploy-" + count.incrementAndGet());
+            thread.setContextClassLoader(classLoader);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Scan folders in webapps directory
+     * @param deployments: path -> deploy task
+     */
+    private void scanContextsOnWebAppsFolder(Map<String, Callable<Context>> deployments) {
         File[] folders = Constant.webappsFolder.listFiles();
         for (File folder : folders) {
             if (folder.isDirectory()) {
-                loadContext(folder);
+                deployments.put(getContextPath(folder), () -> createContext(getContextPath(folder), folder.getAbsolutePath(), true, null));
             }
         }
     }
 
     /**
-     * Load Html files to context map
-     * @param folder
+     * Contexts declared in the <Host> element of server.xml
+     * @param hostConfig: <Host> element
+     * @param deployments: path -> deploy task
      */
-    private void loadContext(File folder) {
-        String path = folder.getName();
-        if (path.equals("ROOT")) {
-            path = "/";
-        } else {
-            path = "/" + path;
+    private void loadContextsInServerXML(HostConfig hostConfig, Map<String, Callable<Context>> deployments) {
+        for (ContextConfig contextConfig : hostConfig.getContexts()) {
+            deployments.put(contextConfig.getPath(), () -> createContext(contextConfig.getPath(), contextConfig.getDocBase(),
+                    contextConfig.isReloadable(), contextConfig));
         }
-        String docBase = folder.getAbsolutePath();
-        Context context = new Context(path, docBase, true, this);
-        this.contextMap.put(context.getPath(), context);
     }
 
     /**
-     * Load contexts from server.xml file
+     * create a Context. lazy, idleTimeout, unloadDelay, precompileJsp and jspCheckInterval are taken from its <Context> in server.xml, or else from the <Context>
+     *  of context.xml.
+     * @param path: url path
+     * @param docBase: directory of the web app
+     * @param reloadable: reload when classes change
+     * @param config: <Context> of server.xml, null for web apps of the webapps folder
+     * @return Context, deployed unless it is lazy
+     */
+    private Context createContext(String path, String docBase, boolean reloadable, ElementConfig config) {
+        ElementConfig defaults = getServerConfig().getContextDefaults();
+        boolean lazy = defaults.getBool("lazy", false);
+        long idleTimeout = defaults.getLong("idleTimeout", 0);
+        long unloadDelay = defaults.getLong("unloadDelay", 2000);
+        boolean precompileJsp = defaults.getBool("precompileJsp", false);
+        long jspCheckInterval = defaults.getLong("jspCheckInterval", 0);
+        if (config != null) {
+            lazy = config.getBool("lazy", lazy);
+            idleTimeout = config.getLong("idleTimeout", idleTimeout);
+            unloadDelay = config.getLong("unloadDelay", unloadDelay);
+            precompileJsp = config.getBool("precompileJsp", precompileJsp);
+            jspCheckInterval = config.getLong("jspCheckInterval", jspCheckInterval);
+        }
+        Context context = new Context(path, docBase, reloadable, this, lazy, idleTimeout);
+        context.setUnloadDelay(unloadDelay);
+        context.setPrecompileJsp(precompileJsp);
+        context.setJspCheckInterval(jspCheckInterval);
+        context.start();
+        if (context.getIdleTimeout() > 0) {
+            startIdleMonitor(context.getIdleTimeout());
+        }
+        return context;
+    }
+
+    /**
+     * Start checking idle lazy contexts. The monitor is started by the first context with an idleTimeout, however it
+     *  is deployed (server.xml, webapps folder, war file), and is not started at all if no context has one.
+     * @param idleTimeout: idleTimeout of the context being deployed
+     */
+    private synchronized void startIdleMonitor(long idleTimeout) {
+        if (idleMonitor != null) {
+            return;
+        }
+        idleMonitor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, hostName + "-idle-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        idleMonitor.schedule(this::checkIdleContexts, getIdleCheckPeriod(idleTimeout), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * unload the contexts in contextMap which had no request for their idleTimeout, then schedule the next check
+     *  in half of the smallest idleTimeout of the contexts the Host has now, between 1 s and 1 min
      */
-    private void loadContextsInServerXML() {
-        List<Context> contexts = XMLParser.getContexts(this);
-        for (Context context : contexts) {
-            this.contextMap.put(context.getPath(), context);
+    private void checkIdleContexts() {
+        long now = System.currentTimeMillis();
+        long idleTimeout = Long.MAX_VALUE;
+        for (Context context : contextMap.values()) {
+            try {
+                context.unloadIfIdle(now);
+            } catch (RuntimeException e) {
+                LogFactory.get().error(e, "Unloading of context [{}] failed", context.getPath());
+            }
+            if (context.getIdleTimeout() > 0) {
+                idleTimeout = Math.min(idleTimeout, context.getIdleTimeout());
+            }
         }
+        idleMonitor.schedule(this::checkIdleContexts, getIdleCheckPeriod(idleTimeout), TimeUnit.MILLISECONDS);
     }
 
     /**
-     * load directory
+     * @param idleTimeout: smallest idleTimeout, Long.MAX_VALUE if none
+     * @return ms until the next check of idle contexts
+     */
+    private static long getIdleCheckPeriod(long idleTimeout) {
+        return Math.min(Math.max(idleTimeout / 2, MIN_IDLE_CHECK_PERIOD), MAX_IDLE_CHECK_PERIOD);
+    }
+
+    /**
+     * context path of a folder in webapps
+     * @param folder: folder
+     * @return / for ROOT, /name otherwise
+     */
+    private static String getContextPath(File folder) {
+        String path = folder.getName();
+        return path.equals("ROOT") ? "/" : "/" + path;
+    }
+
+    /**
+     * load directory of an extracted war file
      * @param folder: directory
      */
     private void load(File folder) {
-        String path = folder.getName();
-        if (path.equals("ROOT")) {
-            path = "/";
-        } else {
-            path = "/" + path;
-        }
-        String docBase = folder.getAbsolutePath();
-        Context context = new Context(path, docBase, false, this);
+        Context context = createContext(getContextPath(folder), folder.getAbsolutePath(), false, null);
+        this.contextMap.put(context.getPath(), context);
     }
 
     /**
-     * load war file:
+     * load war file: extract it into a folder of webapps and deploy that folder
      * @param warFile: war file
      */
     public void loadWar(File warFile) {
+        File contextFolder = extractWar(warFile);
+        if (contextFolder != null) {
+            load(contextFolder);
+        }
+    }
+
+    /**
+     * extract a war file into a folder of webapps named after it
+     * @param warFile: war file
+     * @return folder, null if the context or the folder exists already
+     */
+    private File extractWar(File warFile) {
         String fileName = warFile.getName();
         String folderName = StrUtil.subBefore(fileName, ".", true);
         Context context = getContext("/" + folderName);
         // if context existed, then return
         if (context != null) {
-            return;
+            return null;
         }
         // if not exist
         File folder = new File(Constant.webappsFolder, folderName);
         // if folder exists -> return
         if (folder.exists()) {
-            return;
+            return null;
         }
         File tempWarFile = FileUtil.file(Constant.webappsFolder, folderName, fileName);
         File contextFolder = tempWarFile.getParentFile();
@@ -153,15 +355,31 @@ public class Host {
 
         tempWarFile.delete();
 
-        load(contextFolder);
+        return contextFolder;
     }
 
-    private void scanWarOnWebAppsFolder() {
+    /**
+     * War files of webapps which are not extracted yet: they are extracted and deployed in the deploy task
+     * @param deployments: path -> deploy task
+     */
+    private void scanWarOnWebAppsFolder(Map<String, Callable<Context>> deployments) {
         File folder = FileUtil.file(Constant.webappsFolder);
         File[] files = folder.listFiles();
         for (File file : files) {
-            if(file.getName().toLowerCase().endsWith(".war"))
-                loadWar(file);
+            if (!file.getName().toLowerCase().endsWith(".war")) {
+                continue;
+            }
+            String path = "/" + StrUtil.subBefore(file.getName(), ".", true);
+            if (deployments.containsKey(path)) {
+                continue;
+            }
+            deployments.put(path, () -> {
+                File contextFolder = extractWar(file);
+                if (contextFolder == null) {
+                    throw new IllegalStateException("War file " + file + " could not be extracted");
+                }
+                return createContext(getContextPath(contextFolder), contextFolder.getAbsolutePath(), false, null);
+            });
         }
     }
 }
@@ -1,29 +1,40 @@
 package SimpleTomcat.catalina;
 
+import SimpleTomcat.compression.ContentEncoder;
+import SimpleTomcat.http.ByteRange;
 import SimpleTomcat.http.Request;
 import SimpleTomcat.http.Response;
 import SimpleTomcat.servlet.DefaultServlet;
 import SimpleTomcat.servlet.InvokeServlet;
 import SimpleTomcat.servlet.JspServlet;
 import SimpleTomcat.util.Constant;
+import SimpleTomcat.util.HttpDateUtil;
 import SimpleTomcat.util.SessionManager;
 import cn.hutool.core.util.ArrayUtil;
+import cn.hutool.core.util.RandomUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.core.util.ZipUtil;
 import cn.hutool.log.LogFactory;
-import org.apache.tomcat.util.bcel.Const;
 
 import javax.servlet.Filter;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpSession;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 
 /**
  * HttpProcessor object is used to execute web request
+ *  Every response carries Content-Length and Connection headers, so that the connector can keep the
+ *  connection open and read the next request from the same socket.
+ *  A HEAD request gets the head of the equivalent GET, Content-Length included, but no body: body bytes would be
+ *  read by the client as the start of the next response on the same connection.
  */
 public class HttpProcessor {
     /**
@@ -33,9 +44,17 @@ public class HttpProcessor {
      * @param response: http response
      */
     public void execute(Socket socket, Request request, Response response) {
+        String uri = request.getUri();
+        if (uri == null) {
+            return;
+        }
+        Context context = null;
         try {
-            String uri = request.getUri();
-            if (uri == null) {
+            // deploys a lazy context on its first request
+            context = request.acquireContext();
+            if (context == null) {
+                // context was undeployed while the request was in flight
+                handle404(socket, request, uri);
                 return;
             }
 
@@ -65,30 +84,38 @@ public class HttpProcessor {
                 return;
             }
 
+            if (response.isCommitted()) {
+                // body is already being streamed with chunked encoding: send the rest and the last chunk
+                response.finish();
+                return;
+            }
+
             if (response.getStatus() == Constant.CODE_200) {
                 handle200(socket, request, response);
                 return;
             }
             else if (response.getStatus() == Constant.CODE_302) {
-                handle302(socket, response);
+                handle302(socket, request, response);
                 return;
             }
             else if (response.getStatus() == Constant.CODE_404) {
-                handle404(socket, uri);
+                handle404(socket, request, uri);
                 return;
             }
 
+            // nothing has been written: the connection cannot be reused
+            request.setKeepAlive(false);
         } catch (Exception e) {
             LogFactory.get().error(e);
-            handle500(socket, e);
-        }
-        finally {
-            try {
-                if(!socket.isClosed())
-                    socket.close();
-            } catch (IOException e) {
-                LogFactory.get().error(e);
-                e.printStackTrace();
+            if (response.isCommitted()) {
+                // head and part of the body are sent: the only way to signal the error is to close the connection
+                request.setKeepAlive(false);
+                return;
+            }
+            handle500(socket, request, e);
+        } finally {
+            if (context != null) {
+                context.release();
             }
         }
     }
@@ -115,24 +142,55 @@ public class HttpProcessor {
      * @throws IOException: IOException
      */
     private void handle200(Socket s, Request request, Response response) throws IOException {
+        // client's cached copy is still valid
+        if (isNotModified(request, response)) {
+            handle304(s, request, response);
+            return;
+        }
         // get content's mimeType
         String contentType = response.getContentType();
-        // get cookieHeader
-        String cookiesHeader = response.getCookiesHeader();
-        // get body
-        byte[] body = response.getBody();
-        // check whether need gzip
-        boolean gzipFlag = isGzip(request, body, contentType);
-        // set headText and gzip body based on gzipFlag
+        // get body: in memory, or a file streamed from disk
+        File file = response.getFile();
+        byte[] body = file == null ? response.getBody() : null;
+        // choose a content coding, before the headers are read: it may add Vary.
+        //  A file body is transferred as it is: compressing it would cost cpu for every request, so a large file is only
+        //  sent compressed from its precompressed sibling, which DefaultServlet has already picked.
+        ContentEncoder encoder = file != null ? null : request.getConnector().getContentEncoder(request, response, body.length);
+        // get cookieHeader and headers set by servlets
+        String cookiesHeader = response.getCookiesHeader() + response.getHeadersText();
+        // part of the body is requested: ranges are sent as they are
+        if (isRangeRequest(request, response) && handle206(s, request, response, contentType, cookiesHeader)) {
+            return;
+        }
+        // file body is streamed from disk
+        if (file != null) {
+            handleFile200(s, request, file, contentType, cookiesHeader);
+            return;
+        }
+        // set headText and encode body
         String headText;
-        if (gzipFlag) {
-            headText = Constant.response_head_200_gzip;
-            body = ZipUtil.gzip(body);
+        if (encoder != null) {
+            int level = request.getConnector().getCompressionPolicy().getLevel();
+            // a static file is compressed once per version and cached, other bodies every time
+            CachedResource resource = response.getResource();
+            body = resource != null ? request.getContext().getResourceCache().getEncodedContent(resource, encoder, level)
+                    : encoder.encode(body, level);
+            headText = StrUtil.format(Constant.response_head_200_encoded, contentType,
+                    cookiesHeader + getFramingHeaders(request, body.length), encoder.getName());
         } else {
-            headText = Constant.response_head_200;
+            headText = StrUtil.format(Constant.response_head_200, contentType, cookiesHeader + getFramingHeaders(request, body.length));
+        }
+        if (isHead(request) && body.length == 0 && response.getContentLength() > 0) {
+            // HttpServlet.doHead discards the body but declares the length of the GET body
+            headText = StrUtil.format(Constant.response_head_200, contentType, cookiesHeader + getFramingHeaders(request, response.getContentLength()));
         }
-        headText = StrUtil.format(headText, contentType, cookiesHeader);
         byte[] head = headText.getBytes();
+        if (isHead(request)) {
+            OutputStream outputStream = s.getOutputStream();
+            outputStream.write(head);
+            outputStream.flush();
+            return;
+        }
         byte[] responseBytes = new byte[head.length + body.length];
         ArrayUtil.copy(head, 0, responseBytes, 0, head.length);
         ArrayUtil.copy(body, 0, responseBytes, head.length, body.length);
@@ -140,18 +198,221 @@ public class HttpProcessor {
         OutputStream outputStream = s.getOutputStream();
         outputStream.write(responseBytes, 0, responseBytes.length);
         outputStream.flush();
-        outputStream.close();
+    }
+
+    /**
+     * check the conditional request headers against the validators of the response.
+     *  If-None-Match is compared with ETag (weak comparison) and takes precedence over If-Modified-Since,
+     *  which is compared with Last-Modified in seconds. Works for every response whose servlet sets the validators.
+     * @param request: request
+     * @param response: response
+     * @return true if a 304 can be sent instead of the body
+     */
+    private boolean isNotModified(Request request, Response response) {
+        String method = request.getMethod();
+        if (!Constant.HttpGet.equals(method) && !Constant.HttpHead.equals(method)) {
+            return false;
+        }
+
+        String ifNoneMatch = request.getHeader("if-none-match");
+        if (ifNoneMatch != null) {
+            String eTag = response.getHeader("ETag");
+            if (eTag == null) {
+                return false;
+            }
+            eTag = StrUtil.removePrefix(eTag, "W/");
+            for (String candidate : ifNoneMatch.split(",")) {
+                candidate = candidate.trim();
+                if (candidate.equals("*") || StrUtil.removePrefix(candidate, "W/").equals(eTag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long ifModifiedSince = HttpDateUtil.parse(request.getHeader("if-modified-since"));
+        long lastModified = HttpDateUtil.parse(response.getHeader("Last-Modified"));
+        return ifModifiedSince != -1 && lastModified != -1 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * Handle not modified: head with validators and cookies, no body
+     * @param s: socket
+     * @param request: request
+     * @param response: response
+     * @throws IOException: IOException
+     */
+    private void handle304(Socket s, Request request, Response response) throws IOException {
+        String headText = StrUtil.format(Constant.response_head_304, request.isKeepAlive() ? "keep-alive" : "close",
+                response.getCookiesHeader() + response.getHeadersText());
+        OutputStream outputStream = s.getOutputStream();
+        outputStream.write(headText.getBytes(StandardCharsets.UTF_8));
+        outputStream.flush();
+    }
+
+    /**
+     * send a file body with FileChannel.transferTo: the file is never loaded into the heap.
+     *  NIO connections own a SocketChannel, for which the kernel copies the file to the socket (sendfile).
+     *  bio sockets have no channel; their output stream is wrapped, and transferTo copies through a small buffer.
+     *  Compressible files are encoded while they are read by handleEncodedFile200 instead.
+     * @param s: socket
+     * @param request: request
+     * @param file: file
+     * @param contentType: content type
+     * @param cookiesHeader: cookies header
+     * @throws IOException: IOException
+     */
+    private void handleFile200(Socket s, Request request, File file, String contentType, String cookiesHeader) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = fileChannel.size();
+            String headText = StrUtil.format(Constant.response_head_200, contentType, cookiesHeader + getFramingHeaders(request, length));
+            OutputStream outputStream = s.getOutputStream();
+            outputStream.write(headText.getBytes());
+            outputStream.flush();
+
+            if (!isHead(request)) {
+                writeSlice(s, request, fileChannel, null, 0, length);
+            }
+        }
+    }
+
+    /**
+     * check whether a Range header applies: GET, the servlet supports ranges (Accept-Ranges: bytes)
+     * and If-Range, if present, still matches the current ETag or Last-Modified.
+     *  If-Range is compared with ETag by exact string: DefaultServlet's ETags are weak, and strictly
+     *  following RFC 7233 would make every resumed download start from the beginning.
+     * @param request: request
+     * @param response: response
+     * @return true if the Range header has to be evaluated
+     */
+    private boolean isRangeRequest(Request request, Response response) {
+        if (request.getHeader("range") == null || !Constant.HttpGet.equals(request.getMethod())
+                || !"bytes".equals(response.getHeader("Accept-Ranges"))) {
+            return false;
+        }
+
+        String ifRange = request.getHeader("if-range");
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.endsWith("\"")) {
+            return ifRange.equals(response.getHeader("ETag"));
+        }
+        long lastModified = HttpDateUtil.parse(response.getHeader("Last-Modified"));
+        return lastModified != -1 && lastModified / 1000 == HttpDateUtil.parse(ifRange) / 1000;
+    }
+
+    /**
+     * Handle partial content: one range is sent with Content-Range, several ranges as multipart/byteranges.
+     *  Only the requested slices are read, from the file with transferTo or from the cached body.
+     *  Ranges are never gzipped.
+     * @param s: socket
+     * @param request: request
+     * @param response: response
+     * @param contentType: content type of the whole body
+     * @param cookiesHeader: cookies header and headers set by servlets
+     * @return false if the Range header is invalid and the whole body has to be sent
+     * @throws IOException: IOException
+     */
+    private boolean handle206(Socket s, Request request, Response response, String contentType, String cookiesHeader) throws IOException {
+        File file = response.getFile();
+        byte[] body = file == null ? response.getBody() : null;
+        try (FileChannel fileChannel = file == null ? null : FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = fileChannel != null ? fileChannel.size() : body.length;
+            List<ByteRange> ranges = ByteRange.parse(request.getHeader("range"), length);
+            if (ranges == null) {
+                return false;
+            }
+
+            OutputStream outputStream = s.getOutputStream();
+            if (ranges.isEmpty()) {
+                String headText = StrUtil.format(Constant.response_head_416, length, cookiesHeader + getFramingHeaders(request, 0));
+                outputStream.write(headText.getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+                return true;
+            }
+
+            if (ranges.size() == 1) {
+                ByteRange range = ranges.get(0);
+                String headers = cookiesHeader + "\r\nContent-Range: " + range.toContentRange(length)
+                        + getFramingHeaders(request, range.getLength());
+                outputStream.write(StrUtil.format(Constant.response_head_206, contentType, headers).getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+                writeSlice(s, request, fileChannel, body, range.getStart(), range.getLength());
+                return true;
+            }
+
+            // multipart/byteranges: part heads are built first, because Content-Length covers the whole multipart body
+            String boundary = "SIMPLETOMCAT_" + RandomUtil.randomString(16);
+            byte[][] partHeads = new byte[ranges.size()][];
+            byte[] end = StrUtil.format(Constant.multipart_byteranges_end, boundary).getBytes(StandardCharsets.UTF_8);
+            long contentLength = end.length;
+            for (int i = 0; i < ranges.size(); i++) {
+                ByteRange range = ranges.get(i);
+                partHeads[i] = StrUtil.format(Constant.multipart_byteranges_part_head, boundary, contentType,
+                        range.toContentRange(length)).getBytes(StandardCharsets.UTF_8);
+                contentLength += partHeads[i].length + range.getLength();
+            }
+
+            String headText = StrUtil.format(Constant.response_head_206, "multipart/byteranges; boundary=" + boundary,
+                    cookiesHeader + getFramingHeaders(request, contentLength));
+            outputStream.write(headText.getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < ranges.size(); i++) {
+                outputStream.write(partHeads[i]);
+                outputStream.flush();
+                writeSlice(s, request, fileChannel, body, ranges.get(i).getStart(), ranges.get(i).getLength());
+            }
+            outputStream.write(end);
+            outputStream.flush();
+            return true;
+        }
+    }
+
+    /**
+     * write a slice of the body to the socket
+     *  file: FileChannel.transferTo, to the SocketChannel (NIO) or a channel wrapping the output stream (bio)
+     *  memory: the slice of the body array
+     * @param s: socket
+     * @param request: request
+     * @param fileChannel: file channel of the body, null if body is in memory
+     * @param body: body in memory, null if fileChannel is given
+     * @param position: first byte
+     * @param count: number of bytes
+     * @throws IOException: IOException
+     */
+    private void writeSlice(Socket s, Request request, FileChannel fileChannel, byte[] body, long position, long count) throws IOException {
+        OutputStream outputStream = s.getOutputStream();
+        if (fileChannel == null) {
+            outputStream.write(body, (int) position, (int) count);
+            outputStream.flush();
+            return;
+        }
+
+        WritableByteChannel target = s.getChannel() != null ? s.getChannel() : Channels.newChannel(outputStream);
+        long end = position + count;
+        while (position < end) {
+            long transferred = fileChannel.transferTo(position, end - position, target);
+            if (transferred <= 0) {
+                // file was truncated while being sent: the announced Content-Length can not be met
+                request.setKeepAlive(false);
+                s.close();
+                return;
+            }
+            position += transferred;
+        }
     }
 
     /**
      * Handle client jump
      * @param socket: socket
+     * @param request: request
      * @param response: response
      */
-    private void handle302(Socket socket, Response response) throws IOException {
+    private void handle302(Socket socket, Request request, Response response) throws IOException {
         String redirectPath = response.getRedirectPath();
         String head_text = Constant.response_head_302;
-        String header = StrUtil.format(head_text, redirectPath);
+        String header = StrUtil.format(head_text, redirectPath, getFramingHeaders(request, 0));
         byte[] responseBytes = header.getBytes("utf-8");
         OutputStream outputStream = socket.getOutputStream();
         outputStream.write(responseBytes);
@@ -160,13 +421,15 @@ public class HttpProcessor {
     /**
      * Handle file not found response
      * @param s: socket
+     * @param request: request
      * @param uri: uri
      * @throws IOException: IOException
      */
-    private void handle404(Socket s, String uri) throws IOException {
-        String headText = Constant.response_head_404;
+    private void handle404(Socket s, Request request, String uri) throws IOException {
         String responseText = StrUtil.format(Constant.html_404, uri, uri);
-        responseText = headText + responseText;
+        int contentLength = responseText.getBytes(StandardCharsets.UTF_8).length;
+        String headText = StrUtil.format(Constant.response_head_404, getFramingHeaders(request, contentLength));
+        responseText = isHead(request) ? headText : headText + responseText;
         OutputStream outputStream = s.getOutputStream();
         byte[] responseByte = responseText.getBytes(StandardCharsets.UTF_8);
         outputStream.write(responseByte);
@@ -174,10 +437,12 @@ public class HttpProcessor {
 
     /**
      * Handle Internet Server Error
+     *  The connection is closed after an error response.
      * @param s: socket
+     * @param request: request
      * @param exception: exception
      */
-    private void handle500(Socket s, Exception exception) {
+    private void handle500(Socket s, Request request, Exception exception) {
         try {
             StackTraceElement[] stackTraceElements = exception.getStackTrace();
             StringBuilder stringBuilder = new StringBuilder();
@@ -193,7 +458,10 @@ public class HttpProcessor {
             if (msg != null && msg.length() > 20) msg = msg.substring(0, 19);
 
             String text = StrUtil.format(Constant.html_500, msg, exception.toString(), stringBuilder.toString());
-            text = Constant.response_head_500 + text;
+            int contentLength = text.getBytes(StandardCharsets.UTF_8).length;
+            request.setKeepAlive(false);
+            String headText = StrUtil.format(Constant.response_head_500, getFramingHeaders(request, contentLength));
+            text = isHead(request) ? headText : headText + text;
             byte[] responseBytes = text.getBytes(StandardCharsets.UTF_8);
             OutputStream outputStream = s.getOutputStream();
             outputStream.write(responseBytes);
@@ -203,50 +471,21 @@ public class HttpProcessor {
     }
 
     /**
-     * check whether the transferred file needs to be zipped.
      * @param request: request
-     * @param body: transferred html body
-     * @param mimeType: file type
-     * @return true or false: follow the steps in the method to check out whether can turn gzip on
+     * @return true if only the head of the response is sent
      */
-    private boolean isGzip(Request request, byte[] body, String mimeType) {
-        // Check whether Accept-Encoding contains gzip in header
-        String acceptEncodings = request.getHeader("Accept-Encoding");
-        if (!StrUtil.containsAny(acceptEncodings, "gzip")) {
-            return false;
-        }
-
-        Connector connector = request.getConnector();
-        if (mimeType.contains(";")) {
-            mimeType = StrUtil.subBefore(mimeType, ";", false);
-        }
-        // check whether compression model is on this server
-        if (!connector.getCompression().equals("on")) {
-            return false;
-        }
-        // check whether the transfer file size is more than compression min size
-        if (connector.getCompressionMinSize() > body.length) {
-            return false;
-        }
-        // check whether user agent accept gzip
-        String userAgents = connector.getNoCompressionUserAgents();
-        String[] userAgentList = userAgents.split(",");
-        for (String userAgent : userAgentList) {
-            userAgent = userAgent.trim();
-            if (StrUtil.containsAny(request.getHeader("User-Agent"), userAgent)) {
-                return false;
-            }
-        }
-        // check whether requested mime type is one of mime types provided by server
-        String serverMimeTypes = connector.getCompressionMimeType();
-        String[] serverMimeTypeList = serverMimeTypes.split(",");
-        for (String serverMimeType : serverMimeTypeList) {
-            if (mimeType.equals(serverMimeType)) {
-                return true;
-            }
-        }
+    private boolean isHead(Request request) {
+        return Constant.HttpHead.equals(request.getMethod());
+    }
 
-        return false;
+    /**
+     * build Content-Length and Connection headers of a response
+     * @param request: request
+     * @param contentLength: length of response body
+     * @return headers, each one starts with \r\n
+     */
+    private String getFramingHeaders(Request request, long contentLength) {
+        return StrUtil.format(Constant.response_header_framing, contentLength, request.isKeepAlive() ? "keep-alive" : "close");
     }
 
 }
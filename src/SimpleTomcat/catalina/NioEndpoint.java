@@ -0,0 +1,299 @@
+package SimpleTomcat.catalina;
+
+import SimpleTomcat.exception.BadRequestException;
+import SimpleTomcat.http.HttpRequestParser;
+import cn.hutool.log.LogFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * NioEndpoint is the selector based implementation of a Connector (protocol="nio" in server.xml).
+ *  Acceptor: accepts new connections in a blocking way and hands them to the poller.
+ *  Poller: reads all connections with one Selector in non-blocking mode. Bytes are appended to a
+ *  per-connection HttpRequestParser which parses them as they arrive. Only when a request is complete, the connection leaves the selector,
+ *  is switched back to blocking mode and is given to a worker thread which runs the normal
+ *  Request -> HttpProcessor path. Idle or slow clients therefore hold no worker thread.
+ *  After a keep-alive response, the worker switches the connection back to non-blocking mode and returns it
+ *  to the poller, which waits for the next request.
+ */
+public class NioEndpoint {
+    private static final int READ_BUFFER_SIZE = 8192;   // size of the poller's read buffer
+    private static final long SELECT_TIMEOUT = 1000;    // select timeout in ms, also the period of timeout checks
+
+    private Connector connector;                        // connector this endpoint serves
+    private ServerSocketChannel serverSocketChannel;    // listening channel
+    private Selector selector;                          // selector of the poller
+    private Queue<Attachment> registrations;            // connections waiting to be registered by the poller thread
+    private ByteBuffer readBuffer;                      // read buffer reused by the poller thread
+    private volatile boolean running;                   // running flag
+
+    public NioEndpoint(Connector connector) {
+        this.connector = connector;
+        this.registrations = new ConcurrentLinkedQueue<>();
+        this.readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    }
+
+    /**
+     * bind port and start acceptor and poller threads
+     * @throws IOException: IOException
+     */
+    public void start() throws IOException {
+        this.serverSocketChannel = ServerSocketChannel.open();
+        this.serverSocketChannel.bind(new InetSocketAddress(connector.getPort()));
+        this.selector = Selector.open();
+        this.running = true;
+
+        Thread poller = new Thread(this::poll, "http-nio-" + connector.getPort() + "-Poller");
+        poller.setDaemon(true);
+        poller.start();
+
+        Thread acceptor = new Thread(this::accept, "http-nio-" + connector.getPort() + "-Acceptor");
+        acceptor.start();
+    }
+
+    /**
+     * stop endpoint: close the listening channel and the selector
+     */
+    public void stop() {
+        running = false;
+        try {
+            serverSocketChannel.close();
+            selector.wakeup();
+            selector.close();
+        } catch (IOException e) {
+            LogFactory.get().error(e);
+        }
+    }
+
+    /**
+     * Acceptor loop
+     */
+    private void accept() {
+        while (running) {
+            try {
+                SocketChannel channel = serverSocketChannel.accept();
+                channel.configureBlocking(false);
+                register(new Attachment(channel, connector.getMaxPostSize()));
+            } catch (IOException e) {
+                if (running) {
+                    LogFactory.get().error(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * give a connection to the poller. Registration happens in the poller thread because
+     * SelectableChannel.register blocks while the selector is selecting.
+     * @param attachment: connection state holding a non-blocking socket channel
+     */
+    private void register(Attachment attachment) {
+        registrations.add(attachment);
+        selector.wakeup();
+    }
+
+    /**
+     * Poller loop
+     */
+    private void poll() {
+        List<SelectionKey> readyKeys = new ArrayList<>();
+        while (running) {
+            try {
+                doRegistrations();
+                selector.select(SELECT_TIMEOUT);
+
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    if (read(key)) {
+                        key.cancel();
+                        readyKeys.add(key);
+                    }
+                }
+
+                if (!readyKeys.isEmpty()) {
+                    // flush cancelled keys so that channels can be switched back to blocking mode
+                    selector.selectNow();
+                    for (SelectionKey key : readyKeys) {
+                        dispatch(key);
+                    }
+                    readyKeys.clear();
+                }
+
+                closeTimedOutConnections();
+            } catch (Exception e) {
+                if (running) {
+                    LogFactory.get().error(e);
+                }
+            }
+        }
+    }
+
+    private void doRegistrations() {
+        Attachment attachment;
+        while ((attachment = registrations.poll()) != null) {
+            try {
+                attachment.channel.register(selector, SelectionKey.OP_READ, attachment);
+            } catch (IOException e) {
+                close(attachment.channel);
+            }
+        }
+    }
+
+    /**
+     * read available bytes of a connection
+     * @param key: selection key
+     * @return true if a whole request has been received
+     */
+    private boolean read(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Attachment attachment = (Attachment) key.attachment();
+        try {
+            int readSize;
+            while ((readSize = channel.read(readBuffer)) > 0) {
+                readBuffer.flip();
+                attachment.requestParser.append(readBuffer);
+                readBuffer.clear();
+            }
+            attachment.lastActive = System.currentTimeMillis();
+            if (readSize == -1) {
+                // client closed connection
+                key.cancel();
+                close(channel);
+                return false;
+            }
+            return attachment.requestParser.parse();
+        } catch (BadRequestException e) {
+            LogFactory.get().warn(e.getMessage());
+            key.cancel();
+            sendBadRequest(channel, e);
+            close(channel);
+            return false;
+        } catch (IOException e) {
+            // connection reset or malformed request
+            key.cancel();
+            close(channel);
+            return false;
+        }
+    }
+
+    /**
+     * hand a connection with a complete request to a worker thread
+     * @param key: cancelled selection key
+     */
+    private void dispatch(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Attachment attachment = (Attachment) key.attachment();
+        try {
+            channel.configureBlocking(true);
+        } catch (IOException e) {
+            LogFactory.get().error(e);
+            close(channel);
+            return;
+        }
+        if (!connector.getExecutor().execute(() -> process(attachment))) {
+            connector.reject(channel.socket());
+        }
+    }
+
+    /**
+     * worker side: process buffered requests, then close the connection or return it to the poller
+     * @param attachment: connection state
+     */
+    private void process(Attachment attachment) {
+        boolean keepAlive = true;
+        try {
+            // the first request is parsed by the poller, pipelined ones are parsed here
+            while (keepAlive && attachment.requestParser.parse()) {
+                attachment.servedRequests++;
+                keepAlive = connector.process(attachment.channel.socket(), attachment.requestParser, attachment.servedRequests);
+            }
+        } catch (BadRequestException e) {
+            LogFactory.get().warn(e.getMessage());
+            sendBadRequest(attachment.channel, e);
+            keepAlive = false;
+        } catch (IOException e) {
+            keepAlive = false;
+        }
+
+        if (!keepAlive || !running) {
+            close(attachment.channel);
+            return;
+        }
+        try {
+            attachment.channel.configureBlocking(false);
+            attachment.lastActive = System.currentTimeMillis();
+            register(attachment);
+        } catch (IOException e) {
+            close(attachment.channel);
+        }
+    }
+
+    /**
+     * close connections which did not send a complete request within connectionTimeout,
+     * or stayed idle between two requests longer than keepAliveTimeout
+     */
+    private void closeTimedOutConnections() {
+        long now = System.currentTimeMillis();
+        for (SelectionKey key : selector.keys()) {
+            Attachment attachment = (Attachment) key.attachment();
+            boolean idle = attachment.servedRequests > 0 && attachment.requestParser.getLength() == 0;
+            long timeout = idle ? connector.getKeepAliveTimeout() : connector.getConnectionTimeout();
+            if (key.isValid() && now - attachment.lastActive > timeout) {
+                key.cancel();
+                close((SocketChannel) key.channel());
+            }
+        }
+    }
+
+    /**
+     * answer a request the parser refused (400, or 413 for maxPostSize). The head is small enough for the socket send
+     * buffer, so a single write is enough in non-blocking mode as well; if it does not fit, the client only sees the
+     * connection close.
+     * @param channel: socket channel
+     * @param e: refusal
+     */
+    private void sendBadRequest(SocketChannel channel, BadRequestException e) {
+        try {
+            channel.write(ByteBuffer.wrap(e.getResponse().getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException ioe) {
+            // client is gone
+        }
+    }
+
+    private void close(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LogFactory.get().error(e);
+        }
+    }
+
+    /**
+     * per-connection state kept by the poller
+     */
+    private static class Attachment {
+        private SocketChannel channel;
+        private HttpRequestParser requestParser;
+        private long lastActive = System.currentTimeMillis();
+        private int servedRequests;
+
+        private Attachment(SocketChannel channel, int maxPostSize) {
+            this.channel = channel;
+            this.requestParser = new HttpRequestParser(maxPostSize);
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package SimpleTomcat.catalina;
+
+import SimpleTomcat.compression.ContentEncoder;
+import SimpleTomcat.compression.ContentEncoders;
+import SimpleTomcat.config.ElementConfig;
+import SimpleTomcat.util.MimeTypes;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.log.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ResourceCache keeps static files of one Context in memory, configured by <Resources> in conf/context.xml.
+ *  key: path relative to docBase, value: CachedResource
+ *  Entries are kept in access order, so when the cached content exceeds cacheMaxSize the least recently used
+ *  entries are evicted. Every entry is charged ENTRY_OVERHEAD on top of its content, so entries without content
+ *  count as well. Files larger than cacheObjectMaxSize are cached without content, missing files are not cached.
+ *  An entry is trusted for cacheTtl ms. After that, the next lookup compares lastModified and length with the disk
+ *  and reloads the entry if the file changed.
+ *  Files of at least sendfileSize whose content is not cached are not read into memory at all: DefaultServlet
+ *  hands the file to the Response and HttpProcessor transfers it to the socket. Such a file is never compressed at
+ *  request time: it is sent compressed only from its precompressed sibling.
+ *  The gzip (or other coding) variant of a cached file is compressed on the first request for it and kept with the
+ *  entry, counted in cacheMaxSize like the content. With precompress, a.css.gz is written next to every compressible file when the
+ *  Context starts, and DefaultServlet serves it directly (like gzip_static of nginx). Its content is read on the first
+ *  request which is served with it.
+ *  The cache belongs to a Context, so a reloaded Context starts with an empty cache.
+ */
+public class ResourceCache {
+    // mime types precompress writes a .gz sibling for
+    private static final Set<String> PRECOMPRESS_MIME_TYPES = new HashSet<>(Arrays.asList("text/html", "text/css",
+            "text/plain", "text/xml", "text/javascript", "application/javascript", "application/json", "image/svg+xml"));
+    private static final long PRECOMPRESS_MIN_SIZE = 1024;  // smaller files gain nothing from gzip
+    private static final long ENTRY_OVERHEAD = 512;         // bytes charged per entry: key, CachedResource and sibling metadata
+
+    private boolean cachingAllowed = true;      // cachingAllowed: whether static resources are cached
+    private long maxSize = 10240 * 1024;        // cacheMaxSize: max total size of cached content in bytes (configured in KB)
+    private long maxObjectSize = 512 * 1024;    // cacheObjectMaxSize: max size of one cached file in bytes (configured in KB)
+    private long ttl = 5000;                    // cacheTtl: ms an entry is used without checking the disk
+    private long sendfileSize = 48 * 1024;      // sendfileSize: min size in bytes of a file streamed from disk (configured in KB)
+    private boolean precompress = false;        // precompress: write .gz siblings of compressible files at startup
+
+    private final File docBase;                                     // docBase of the context
+    private volatile MimeTypes mimeTypes = MimeTypes.getServerMimeTypes();  // mime types of the context
+    private final LinkedHashMap<String, CachedResource> resources;  // cached resources in access order
+    private final Lock lock = new ReentrantLock();                  // guards resources and size
+    private long size;                                              // size of cached content in bytes
+    private final AtomicLong hitCount = new AtomicLong();           // lookups answered from the cache
+    private final AtomicLong lookupCount = new AtomicLong();        // all lookups
+
+    public ResourceCache(String docBase) {
+        this.docBase = new File(docBase);
+        this.resources = new LinkedHashMap<>(64, 0.75f, true);
+    }
+
+    /**
+     * Create the static resource cache of a context from <Resources> in context.xml.
+     *  cachingAllowed and precompress: true/false, cacheMaxSize, cacheObjectMaxSize and sendfileSize: KB, cacheTtl: ms
+     * @param docBase: docBase of the context
+     * @param config: <Resources> element, null for the defaults
+     * @return ResourceCache
+     */
+    public static ResourceCache create(String docBase, ElementConfig config) {
+        ResourceCache resourceCache = new ResourceCache(docBase);
+        if (config == null) {
+            return resourceCache;
+        }
+        resourceCache.setCachingAllowed(config.getBool("cachingAllowed", resourceCache.isCachingAllowed()));
+        resourceCache.setMaxSize(config.getLong("cacheMaxSize", resourceCache.getMaxSize() / 1024) * 1024);
+        resourceCache.setMaxObjectSize(config.getLong("cacheObjectMaxSize", resourceCache.getMaxObjectSize() / 1024) * 1024);
+        resourceCache.setTtl(config.getLong("cacheTtl", resourceCache.getTtl()));
+        resourceCache.setSendfileSize(config.getLong("sendfileSize", resourceCache.getSendfileSize() / 1024) * 1024);
+        resourceCache.setPrecompress(config.getBool("precompress", resourceCache.isPrecompress()));
+        return resourceCache;
+    }
+
+    /**
+     * get a static resource of the context
+     * @param path: path relative to docBase, e.g. css/a.css
+     * @return resource, check exists() before using it
+     */
+    public CachedResource getResource(String path) {
+        File file = new File(docBase, path);
+        if (!cachingAllowed) {
+            return new CachedResource(path, file, mimeTypes, 0, 0);
+        }
+
+        long now = System.currentTimeMillis();
+        CachedResource resource;
+        lookupCount.incrementAndGet();
+        lock.lock();
+        try {
+            // get() of an access ordered LinkedHashMap moves the entry, so it needs the lock as well
+            resource = resources.get(path);
+        } finally {
+            lock.unlock();
+        }
+
+        if (resource != null) {
+            if (now < resource.getNextCheck()) {
+                hitCount.incrementAndGet();
+                return resource;
+            }
+            if (resource.isValid()) {
+                resource.setNextCheck(now + ttl);
+                hitCount.incrementAndGet();
+                return resource;
+            }
+        }
+
+        // load outside the lock: a slow disk read must not block lookups of other resources
+        CachedResource loaded = new CachedResource(path, file, mimeTypes, maxObjectSize, now + ttl);
+        if (loaded.exists()) {
+            put(path, loaded);
+        } else if (resource != null) {
+            remove(path, resource);
+        }
+        return loaded;
+    }
+
+    /**
+     * add or replace an entry and evict least recently used entries until the cache fits into maxSize
+     * @param path: path relative to docBase
+     * @param resource: resource
+     */
+    private void put(String path, CachedResource resource) {
+        lock.lock();
+        try {
+            CachedResource old = resources.put(path, resource);
+            if (old != null) {
+                size -= getChargedSize(old);
+            }
+            size += getChargedSize(resource);
+            evict(resource);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * remove an entry whose file is gone
+     * @param path: path relative to docBase
+     * @param resource: entry found by the lookup, nothing is removed if another thread replaced it meanwhile
+     */
+    private void remove(String path, CachedResource resource) {
+        lock.lock();
+        try {
+            if (resources.remove(path, resource)) {
+                size -= getChargedSize(resource);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param resource: resource
+     * @return bytes an entry counts in cacheMaxSize
+     */
+    private static long getChargedSize(CachedResource resource) {
+        return ENTRY_OVERHEAD + resource.getCachedSize();
+    }
+
+    /**
+     * evict least recently used entries until the cache fits into maxSize. Caller holds lock.
+     * @param keep: entry which is not evicted, the one just added or grown
+     */
+    private void evict(CachedResource keep) {
+        Iterator<Map.Entry<String, CachedResource>> iterator = resources.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<String, CachedResource> eldest = iterator.next();
+            if (eldest.getValue() == keep) {
+                continue;
+            }
+            size -= getChargedSize(eldest.getValue());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * encoded content of a resource, compressed once per file version, coding and level
+     *  The variant is kept only if the content is cached and the entry is still in the cache: an evicted or
+     *  replaced entry must not add to size. Two threads may compress the same file at the same time, one result wins.
+     * @param resource: existing resource
+     * @param encoder: content coding
+     * @param level: compression level
+     * @return encoded content
+     * @throws IOException: IOException
+     */
+    public byte[] getEncodedContent(CachedResource resource, ContentEncoder encoder, int level) throws IOException {
+        String key = encoder.getName() + "-" + level;
+        byte[] encodedContent = resource.getEncodedContent(key);
+        if (encodedContent != null) {
+            return encodedContent;
+        }
+
+        encodedContent = encoder.encode(resource.getContent(), level);
+        if (!resource.isContentCached()) {
+            return encodedContent;
+        }
+        lock.lock();
+        try {
+            if (resource.getEncodedContent(key) == null && resources.get(resource.getPath()) == resource) {
+                resource.putEncodedContent(key, encodedContent);
+                size += encodedContent.length;
+                evict(resource);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return encodedContent;
+    }
+
+    /**
+     * pre-compressed sibling of a resource, to be sent instead of the resource. Its content is read on the first
+     *  call and kept with the entry, counted in cacheMaxSize; siblings which are never served cost no memory.
+     * @param resource: existing resource
+     * @param encoding: gzip or br
+     * @return sibling, null if it does not exist or is older than the file
+     */
+    public CachedResource getSibling(CachedResource resource, String encoding) {
+        CachedResource sibling = resource.getSibling(encoding);
+        if (sibling == null || sibling.isContentCached() || !cachingAllowed || sibling.getLength() > maxObjectSize) {
+            return sibling;
+        }
+
+        CachedResource loaded = resource.loadSiblingContent(encoding, mimeTypes, maxObjectSize);
+        lock.lock();
+        try {
+            if (resource.getSibling(encoding) == sibling && resources.get(resource.getPath()) == resource) {
+                resource.setSibling(encoding, loaded);
+                size += loaded.getCachedSize();
+                evict(resource);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return loaded;
+    }
+
+    /**
+     * write file.gz next to every compressible file of docBase which has no up-to-date one.
+     *  WEB-INF and META-INF are skipped, they are never served.
+     * @return number of files compressed
+     */
+    public int precompress() {
+        int count = 0;
+        for (File file : FileUtil.loopFiles(docBase)) {
+            String path = file.getAbsolutePath().substring(docBase.getAbsolutePath().length() + 1).replace('\\', '/');
+            if (path.startsWith("WEB-INF/") || path.startsWith("META-INF/") || file.length() < PRECOMPRESS_MIN_SIZE
+                    || !PRECOMPRESS_MIME_TYPES.contains(mimeTypes.getMimeTypeOrDefault(FileUtil.extName(file)))) {
+                continue;
+            }
+            File gzipFile = new File(file.getPath() + ".gz");
+            if (gzipFile.exists() && gzipFile.lastModified() >= file.lastModified()) {
+                continue;
+            }
+            try {
+                // compressed once, so the best level is worth its cpu time
+                FileUtil.writeBytes(ContentEncoders.get("gzip").encode(FileUtil.readBytes(file), Deflater.BEST_COMPRESSION), gzipFile);
+                count++;
+            } catch (Exception e) {
+                LogFactory.get().error(e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * remove all entries
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            resources.clear();
+            size = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isCachingAllowed() {
+        return cachingAllowed;
+    }
+
+    public void setCachingAllowed(boolean cachingAllowed) {
+        this.cachingAllowed = cachingAllowed;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public long getMaxObjectSize() {
+        return maxObjectSize;
+    }
+
+    public void setMaxObjectSize(long maxObjectSize) {
+        this.maxObjectSize = maxObjectSize;
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(long ttl) {
+        this.ttl = ttl;
+    }
+
+    public long getSendfileSize() {
+        return sendfileSize;
+    }
+
+    public void setSendfileSize(long sendfileSize) {
+        this.sendfileSize = sendfileSize;
+    }
+
+    public void setMimeTypes(MimeTypes mimeTypes) {
+        this.mimeTypes = mimeTypes;
+    }
+
+    public boolean isPrecompress() {
+        return precompress;
+    }
+
+    public void setPrecompress(boolean precompress) {
+        this.precompress = precompress;
+    }
+
+    /**
+     * check whether a resource is streamed from disk instead of being sent from memory
+     * @param resource: existing resource
+     * @return true if content is not cached and file is at least sendfileSize
+     */
+    public boolean useSendfile(CachedResource resource) {
+        return !resource.isContentCached() && resource.getLength() >= sendfileSize;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return StrUtil.format("ResourceCache[{}, entries={}, size={}/{}, hits={}/{}]",
+                    docBase, resources.size(), size, maxSize, hitCount, lookupCount);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package SimpleTomcat.catalina;
 
+import SimpleTomcat.config.ServerConfig;
+import SimpleTomcat.config.ServerConfigParser;
+import SimpleTomcat.exception.ServerConfigException;
+import SimpleTomcat.util.Constant;
+import SimpleTomcat.util.MimeTypes;
 import cn.hutool.core.date.DateUtil;
 import cn.hutool.core.date.TimeInterval;
 import cn.hutool.log.LogFactory;
@@ -14,12 +19,31 @@ import java.util.Map;
  * Server 就代表最外层的 Server 元素，即服务器本身。
  */
 public class Server {
+    private final ServerConfig serverConfig;    // server.xml and context.xml, parsed once
     private Service service;
 
-    public Server() {
+    /**
+     * Constructor: read the configuration and build Service, Engine, Hosts and Contexts from it
+     * @throws ServerConfigException: server.xml or context.xml is invalid, the message names file and line
+     */
+    public Server() throws ServerConfigException {
+        try {
+            this.serverConfig = ServerConfigParser.parse(Constant.serverXmlFile, Constant.contextXMLFile);
+        } catch (ServerConfigException e) {
+            LogFactory.get().error("Invalid configuration, {}", e.getMessage());
+            throw e;
+        }
+        LogFactory.get().info("Loaded {} connectors and {} hosts from {}", serverConfig.getConnectors().size(),
+                serverConfig.getHosts().size(), Constant.serverXmlFile);
+        // mime types are read before any web app is deployed, requests only read them
+        LogFactory.get().info("Loaded {} mime mappings from {}", MimeTypes.getServerMimeTypes().size(), Constant.webXmlFile);
         this.service = new Service(this);
     }
 
+    public ServerConfig getServerConfig() {
+        return serverConfig;
+    }
+
     /**
      * Start the server
      */
@@ -1,10 +1,13 @@
 package SimpleTomcat.catalina;
 
-import SimpleTomcat.util.XMLParser;
+import SimpleTomcat.config.ConnectorConfig;
+import SimpleTomcat.config.ElementConfig;
+import SimpleTomcat.config.ServerConfig;
 import cn.hutool.core.date.DateUtil;
 import cn.hutool.core.date.TimeInterval;
 import cn.hutool.log.LogFactory;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -20,10 +23,66 @@ public class Service {
      * Constructor
      */
     public Service(Server server){
-        this.serviceName = XMLParser.getServiceName();
-        this.engine = new Engine(this);
+        ServerConfig serverConfig = server.getServerConfig();
         this.server = server;
-        this.connectors = XMLParser.getConnectors(this);
+        this.serviceName = serverConfig.getServiceName();
+        this.engine = new Engine(this, serverConfig);
+        this.connectors = createConnectors(serverConfig);
+    }
+
+    public Server getServer() {
+        return server;
+    }
+
+    /**
+     * create connectors of <Connector> elements. Missing attributes keep the defaults of Connector.
+     * @param serverConfig: server configuration
+     * @return connectors
+     */
+    private List<Connector> createConnectors(ServerConfig serverConfig) {
+        List<Connector> connectors = new ArrayList<>();
+        for (ConnectorConfig config : serverConfig.getConnectors()) {
+            Connector connector = new Connector(config.getPort(), this, config.getAttribute("compression", ""),
+                    config.getInt("compressionMinSize", 0), config.getAttribute("noCompressionUserAgents", ""),
+                    config.getAttribute("compressionMimeType", ""));
+            connector.setCompressionMaxSize(config.getInt("compressionMaxSize", connector.getCompressionMaxSize()));
+            connector.setCompressionLevel(config.getInt("compressionLevel", connector.getCompressionLevel()));
+            if (config.hasAttribute("compressionEncodings")) {
+                connector.setCompressionEncodings(config.getAttribute("compressionEncodings"));
+            }
+            if (config.hasAttribute("protocol")) {
+                connector.setProtocol(config.getAttribute("protocol"));
+            }
+            connector.setConnectionTimeout(config.getInt("connectionTimeout", connector.getConnectionTimeout()));
+            connector.setKeepAliveTimeout(config.getInt("keepAliveTimeout", connector.getKeepAliveTimeout()));
+            connector.setMaxKeepAliveRequests(config.getInt("maxKeepAliveRequests", connector.getMaxKeepAliveRequests()));
+            connector.setMaxPostSize(config.getInt("maxPostSize", connector.getMaxPostSize()));
+            if (config.hasAttribute("executor")) {
+                connector.setExecutorType(config.getAttribute("executor"));
+            }
+            if (config.getExecutor() != null) {
+                connector.setExecutor(createExecutor(config.getExecutor()));
+            }
+            connectors.add(connector);
+        }
+        return connectors;
+    }
+
+    /**
+     * create the executor of a connector from its <Executor> element. Missing attributes keep their defaults.
+     * @param config: <Executor> element
+     * @return StandardThreadExecutor
+     */
+    private StandardThreadExecutor createExecutor(ElementConfig config) {
+        StandardThreadExecutor executor = new StandardThreadExecutor();
+        executor.setMinSpareThreads(config.getInt("minSpareThreads", executor.getMinSpareThreads()));
+        executor.setMaxThreads(config.getInt("maxThreads", executor.getMaxThreads()));
+        executor.setMaxQueueSize(config.getInt("maxQueueSize", executor.getMaxQueueSize()));
+        executor.setMaxIdleTime(config.getInt("maxIdleTime", executor.getMaxIdleTime()));
+        if (config.hasAttribute("rejectionPolicy")) {
+            executor.setRejectionPolicy(config.getAttribute("rejectionPolicy"));
+        }
+        return executor;
     }
 
     /**
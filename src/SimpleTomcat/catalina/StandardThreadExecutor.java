@@ -0,0 +1,292 @@
+package SimpleTomcat.catalina;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.log.LogFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * StandardThreadExecutor is the worker pool of one Connector, configured by <Executor> inside <Connector> in server.xml.
+ *  A plain ThreadPoolExecutor only creates threads above the core size when its queue is full. The TaskQueue here
+ *  refuses tasks while the pool can still grow, so the pool grows to maxThreads first and queues afterwards.
+ *  When threads and queue are exhausted, execute() returns false instead of throwing, and the Connector answers
+ *  the connection according to rejectionPolicy.
+ *  Virtual mode (executor="virtual" on <Connector>) runs every task on its own virtual thread instead. The blocking
+ *  request path then costs no platform thread while it waits for I/O, so thread and queue limits do not apply.
+ *  Virtual threads need JDK 21; they are looked up by reflection so the server still builds and runs on older JDKs,
+ *  where virtual mode falls back to the platform pool.
+ */
+public class StandardThreadExecutor {
+    public static final String REJECT_503 = "503";      // rejectionPolicy: answer 503 Service Unavailable and close
+    public static final String REJECT_CLOSE = "close";  // rejectionPolicy: close the connection without answer
+
+    private String namePrefix = "exec";         // thread name prefix, set to http-{protocol}-{port} by Connector
+    private int minSpareThreads = 10;           // threads kept alive while idle
+    private int maxThreads = 200;               // max number of worker threads
+    private int maxQueueSize = 100;             // max number of tasks waiting for a thread
+    private int maxIdleTime = 60000;            // ms an idle thread above minSpareThreads is kept
+    private String rejectionPolicy = REJECT_503; // what to do with a connection which can not be served
+    private boolean virtual;                    // run each task on a new virtual thread
+
+    private ThreadPoolExecutor threadPoolExecutor;      // platform pool
+    private ExecutorService virtualThreadExecutor;      // virtual thread per task executor, null in platform mode
+    private final AtomicInteger submittedCount = new AtomicInteger();   // tasks queued or running
+    private final AtomicLong completedCount = new AtomicLong();         // tasks finished on virtual threads
+    private final AtomicLong rejectedCount = new AtomicLong();          // tasks rejected since start
+
+    /**
+     * create the virtual thread executor, or create and prestart the thread pool
+     */
+    public void start() {
+        if (virtual) {
+            virtualThreadExecutor = newVirtualThreadExecutor();
+            if (virtualThreadExecutor != null) {
+                return;
+            }
+            LogFactory.get().warn("Virtual threads are not available on JVM {}, [{}] uses a platform thread pool",
+                    System.getProperty("java.version"), namePrefix);
+            virtual = false;
+        }
+
+        TaskQueue taskQueue = new TaskQueue(maxQueueSize);
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> new Thread(runnable, namePrefix + "-exec-" + threadNumber.incrementAndGet());
+        threadPoolExecutor = new ThreadPoolExecutor(minSpareThreads, maxThreads, maxIdleTime, TimeUnit.MILLISECONDS,
+                taskQueue, threadFactory) {
+            @Override
+            protected void afterExecute(Runnable r, Throwable t) {
+                submittedCount.decrementAndGet();
+            }
+        };
+        taskQueue.setParent(this);
+        threadPoolExecutor.prestartAllCoreThreads();
+    }
+
+    /**
+     * stop accepting tasks. Running tasks are finished.
+     */
+    public void stop() {
+        if (virtualThreadExecutor != null) {
+            virtualThreadExecutor.shutdown();
+        }
+        if (threadPoolExecutor != null) {
+            threadPoolExecutor.shutdown();
+        }
+    }
+
+    /**
+     * run a task on a worker thread
+     * @param task: task
+     * @return false if all threads are busy and the queue is full
+     */
+    public boolean execute(Runnable task) {
+        submittedCount.incrementAndGet();
+        if (virtualThreadExecutor != null) {
+            return executeOnVirtualThread(task);
+        }
+        try {
+            threadPoolExecutor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            // the pool may have reached maxThreads between TaskQueue.offer and adding a thread: queue it if there is room
+            if (!threadPoolExecutor.isShutdown() && ((TaskQueue) threadPoolExecutor.getQueue()).force(task)) {
+                return true;
+            }
+            submittedCount.decrementAndGet();
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * run a task on a new virtual thread and count it
+     * @param task: task
+     * @return false if the executor is shut down
+     */
+    private boolean executeOnVirtualThread(Runnable task) {
+        try {
+            virtualThreadExecutor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    submittedCount.decrementAndGet();
+                    completedCount.incrementAndGet();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            submittedCount.decrementAndGet();
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix + "-virtual-", 1).factory()) by reflection
+     * @return executor, or null if the JVM has no virtual threads
+     */
+    private ExecutorService newVirtualThreadExecutor() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix + "-virtual-", 1L);
+            ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, threadFactory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // no such method before JDK 19, UnsupportedOperationException on JDK 19/20 without --enable-preview
+            return null;
+        }
+    }
+
+    public String getNamePrefix() {
+        return namePrefix;
+    }
+
+    public void setNamePrefix(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+
+    public int getMinSpareThreads() {
+        return minSpareThreads;
+    }
+
+    public void setMinSpareThreads(int minSpareThreads) {
+        this.minSpareThreads = minSpareThreads;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    public void setMaxThreads(int maxThreads) {
+        this.maxThreads = maxThreads;
+    }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    public void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    public int getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    public void setMaxIdleTime(int maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    public void setVirtual(boolean virtual) {
+        this.virtual = virtual;
+    }
+
+    public String getRejectionPolicy() {
+        return rejectionPolicy;
+    }
+
+    public void setRejectionPolicy(String rejectionPolicy) {
+        this.rejectionPolicy = rejectionPolicy;
+    }
+
+    /**
+     * @return number of threads running a task
+     */
+    public int getActiveCount() {
+        if (virtualThreadExecutor != null) {
+            return submittedCount.get();
+        }
+        return threadPoolExecutor == null ? 0 : threadPoolExecutor.getActiveCount();
+    }
+
+    /**
+     * @return number of threads in the pool
+     */
+    public int getPoolSize() {
+        return threadPoolExecutor == null ? 0 : threadPoolExecutor.getPoolSize();
+    }
+
+    /**
+     * @return number of tasks waiting for a thread
+     */
+    public int getQueueSize() {
+        return threadPoolExecutor == null ? 0 : threadPoolExecutor.getQueue().size();
+    }
+
+    /**
+     * @return number of finished tasks (approximation, see ThreadPoolExecutor.getCompletedTaskCount)
+     */
+    public long getCompletedTaskCount() {
+        if (virtualThreadExecutor != null) {
+            return completedCount.get();
+        }
+        return threadPoolExecutor == null ? 0 : threadPoolExecutor.getCompletedTaskCount();
+    }
+
+    /**
+     * @return number of rejected tasks
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return StrUtil.format("{}-exec[active={}, poolSize={}, queued={}, completed={}, rejected={}]",
+                namePrefix, getActiveCount(), getPoolSize(), getQueueSize(), getCompletedTaskCount(), getRejectedCount());
+    }
+
+    /**
+     * bounded queue which makes the pool create threads up to maxThreads before queueing
+     */
+    private static class TaskQueue extends LinkedBlockingQueue<Runnable> {
+        private static final long serialVersionUID = 1L;
+        private transient StandardThreadExecutor parent;
+
+        private TaskQueue(int capacity) {
+            super(Math.max(capacity, 1));
+        }
+
+        private void setParent(StandardThreadExecutor parent) {
+            this.parent = parent;
+        }
+
+        /**
+         * put a task into the queue even though offer() refused it
+         * @param task: task
+         * @return false if the queue is full
+         */
+        private boolean force(Runnable task) {
+            return super.offer(task);
+        }
+
+        @Override
+        public boolean offer(Runnable task) {
+            ThreadPoolExecutor executor = parent.threadPoolExecutor;
+            int poolSize = executor.getPoolSize();
+            if (poolSize >= executor.getMaximumPoolSize()) {
+                return super.offer(task);
+            }
+            if (parent.submittedCount.get() <= poolSize) {
+                // an idle thread will take it
+                return super.offer(task);
+            }
+            // returning false makes ThreadPoolExecutor add a thread
+            return false;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package SimpleTomcat.catalina;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * UrlMapper resolves a uri within a Context against the url-patterns of web.xml, the way the Servlet
+ * specification defines them:
+ *  - exact: /hello
+ *  - path prefix: /api/* matches /api and everything below it, /* matches every uri
+ *  - extension: *.do, and /*.do, the form this server has always accepted for filters
+ *  - default: /
+ *  Exact and prefix patterns are kept in a trie of path segments, so a uri is resolved by walking its segments
+ *  once instead of testing every pattern. The mapper is filled while web.xml is parsed and only read afterwards;
+ *  a reloaded context parses web.xml again into a new one.
+ * @param <T>: what a pattern is mapped to
+ */
+public class UrlMapper<T> {
+    private final Node<T> root = new Node<>(null);                  // node of the context root, its prefix targets are those of /*
+    private final Map<String, List<T>> extensionTargets = new HashMap<>(); // extension -> targets of *.extension
+    private final List<T> defaultTargets = new ArrayList<>();       // targets of /
+
+    private static class Node<T> {
+        private final Node<T> parent;                               // node of the path without its last segment, null for the root
+        private final Map<String, Node<T>> children = new HashMap<>(); // next path segment -> node
+        private final List<T> exactTargets = new ArrayList<>();     // targets of the pattern ending at this node
+        private final List<T> prefixTargets = new ArrayList<>();    // targets of the pattern ending at this node followed by /*
+
+        private Node(Node<T> parent) {
+            this.parent = parent;
+        }
+    }
+
+    /**
+     * MatchKey identifies the patterns matchAll finds for a uri: uris with equal keys match the same patterns.
+     *  It only refers to the nodes and target lists of the mapper, so the number of distinct keys is bounded by
+     *  the patterns however many different uris are requested, and a caller can cache what it derives from the
+     *  matching targets by key.
+     * @param <T>: what a pattern is mapped to
+     */
+    public static final class MatchKey<T> {
+        private final Node<T> node;             // deepest node of the uri in the trie
+        private final boolean exact;            // the uri ends at node and node has exact targets
+        private final List<T> extension;        // targets of the extension of the uri, null if none
+        private final boolean root;             // the uri is / and there are default targets
+
+        private MatchKey(Node<T> node, boolean exact, List<T> extension, boolean root) {
+            this.node = node;
+            this.exact = exact;
+            this.extension = extension;
+            this.root = root;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof MatchKey)) {
+                return false;
+            }
+            MatchKey<?> other = (MatchKey<?>) o;
+            return node == other.node && exact == other.exact && extension == other.extension && root == other.root;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = System.identityHashCode(node);
+            hash = 31 * hash + System.identityHashCode(extension);
+            return 4 * hash + (exact ? 2 : 0) + (root ? 1 : 0);
+        }
+    }
+
+    /**
+     * map a url-pattern to a target. Targets of the same pattern are kept in the order they are added.
+     * @param pattern: url-pattern of web.xml
+     * @param target: target
+     */
+    public void add(String pattern, T target) {
+        if (pattern.equals("/")) {
+            defaultTargets.add(target);
+        } else if (pattern.startsWith("*.")) {
+            extensionTargets.computeIfAbsent(pattern.substring(2), k -> new ArrayList<>()).add(target);
+        } else if (pattern.startsWith("/*.")) {
+            extensionTargets.computeIfAbsent(pattern.substring(3), k -> new ArrayList<>()).add(target);
+        } else if (pattern.endsWith("/*")) {
+            getOrCreateNode(pattern.substring(0, pattern.length() - 2)).prefixTargets.add(target);
+        } else {
+            getOrCreateNode(pattern).exactTargets.add(target);
+        }
+    }
+
+    /**
+     * resolve a uri to the target of the best matching pattern, as for servlets:
+     *  exact match first, then the longest path prefix, then the extension, then the default pattern.
+     * @param uri: uri within the context
+     * @return first target of the best pattern, null if no pattern matches
+     */
+    public T map(String uri) {
+        Node<T> node = root;
+        List<T> prefixTargets = root.prefixTargets;
+        int start = 1;
+        boolean walked = true;     // every segment of uri is in the trie
+        while (start <= uri.length()) {
+            int end = uri.indexOf('/', start);
+            if (end == -1) {
+                end = uri.length();
+            }
+            Node<T> child = node.children.get(uri.substring(start, end));
+            if (child == null) {
+                walked = false;
+                break;
+            }
+            node = child;
+            if (!node.prefixTargets.isEmpty()) {
+                prefixTargets = node.prefixTargets;
+            }
+            start = end + 1;
+        }
+
+        if (walked && !node.exactTargets.isEmpty()) {
+            return node.exactTargets.get(0);
+        }
+        if (!prefixTargets.isEmpty()) {
+            return prefixTargets.get(0);
+        }
+        List<T> targets = extensionTargets.get(getExtension(uri));
+        if (targets != null) {
+            return targets.get(0);
+        }
+        return defaultTargets.isEmpty() ? null : defaultTargets.get(0);
+    }
+
+    /**
+     * collect the targets of every pattern matching a uri, as for filters: exact, all path prefixes and the
+     * extension. The default pattern / only matches the uri /.
+     * @param uri: uri within the context
+     * @param targets: list the matching targets are added to, in no particular order
+     */
+    public void matchAll(String uri, List<T> targets) {
+        matchAll(matchKey(uri), targets);
+    }
+
+    /**
+     * collect the targets of every pattern matching the uris of a key, see matchAll(String, List)
+     * @param key: key returned by matchKey of this mapper
+     * @param targets: list the matching targets are added to, in no particular order
+     */
+    public void matchAll(MatchKey<T> key, List<T> targets) {
+        for (Node<T> node = key.node; node != null; node = node.parent) {
+            targets.addAll(node.prefixTargets);
+        }
+        if (key.exact) {
+            targets.addAll(key.node.exactTargets);
+        }
+        if (key.extension != null) {
+            targets.addAll(key.extension);
+        }
+        if (key.root) {
+            targets.addAll(defaultTargets);
+        }
+    }
+
+    /**
+     * resolve a uri to the key of the patterns it matches, see MatchKey
+     * @param uri: uri within the context
+     * @return key
+     */
+    public MatchKey<T> matchKey(String uri) {
+        Node<T> node = root;
+        int start = 1;
+        boolean walked = true;
+        while (start <= uri.length()) {
+            int end = uri.indexOf('/', start);
+            if (end == -1) {
+                end = uri.length();
+            }
+            Node<T> child = node.children.get(uri.substring(start, end));
+            if (child == null) {
+                walked = false;
+                break;
+            }
+            node = child;
+            start = end + 1;
+        }
+
+        boolean exact = walked && !node.exactTargets.isEmpty();
+        List<T> extension = extensionTargets.isEmpty() ? null : extensionTargets.get(getExtension(uri));
+        boolean isRoot = uri.equals("/") && !defaultTargets.isEmpty();
+        return new MatchKey<>(node, exact, extension, isRoot);
+    }
+
+    /**
+     * get the node of a path, creating the missing ones
+     * @param path: path of an exact or prefix pattern, e.g. /api
+     * @return node
+     */
+    private Node<T> getOrCreateNode(String path) {
+        Node<T> node = root;
+        if (path.isEmpty()) {
+            return node;
+        }
+        int start = path.startsWith("/") ? 1 : 0;
+        while (start <= path.length()) {
+            int end = path.indexOf('/', start);
+            if (end == -1) {
+                end = path.length();
+            }
+            Node<T> parent = node;
+            node = node.children.computeIfAbsent(path.substring(start, end), k -> new Node<>(parent));
+            start = end + 1;
+        }
+        return node;
+    }
+
+    /**
+     * @param uri: uri
+     * @return extension of the last segment of uri without the dot, null if it has none
+     */
+    private static String getExtension(String uri) {
+        int dotIndex = uri.lastIndexOf('.');
+        if (dotIndex == -1 || dotIndex < uri.lastIndexOf('/')) {
+            return null;
+        }
+        return uri.substring(dotIndex + 1);
+    }
+}
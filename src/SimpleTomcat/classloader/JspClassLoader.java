@@ -8,8 +8,6 @@ import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * JspClassLoader is to load jsp files:
@@ -18,27 +16,24 @@ import java.util.concurrent.ConcurrentHashMap;
  *  3. JspClassLoader is based on the .class file which is got from compiling .jsp file
  */
 public class JspClassLoader extends URLClassLoader {
-    // map to store jsp file and JspClassLoader. key: jsp file, value: JspClassLoader
-    // to prevent to create multiple JspClassLoader use ConcurrentHashMap
-    private static Map<String, JspClassLoader> jspMap= new ConcurrentHashMap<>();
-
     /**
-     * invalid jspClassLoader: remove jspClassLoader form jspMap
+     * invalid jspClassLoader: remove the jspClassLoader of a jsp from its context
      * @param uri: jsp uri
      * @param context: context
      */
     public static void invalidJspClassLoader(String uri, Context context) {
-        String key = context.getPath() + "/" + uri;
-        jspMap.remove(key);
+        context.getJspClassLoaders().remove(uri);
     }
 
+    /**
+     * get the JspClassLoader of a jsp, created once even if requests ask for it at the same time.
+     *  The loaders belong to the Context, so a reloaded context creates new ones on top of its new WebappClassLoader.
+     * @param uri: jsp uri
+     * @param context: context
+     * @return JspClassLoader
+     */
     public static JspClassLoader getJspClassLoader(String uri, Context context) {
-        String key = context.getPath() + "/" + uri;
-        if (!jspMap.containsKey(key)) {
-            jspMap.put(key, new JspClassLoader(context));
-        }
-
-        return jspMap.get(key);
+        return context.getJspClassLoaders().computeIfAbsent(uri, key -> new JspClassLoader(context));
     }
 
     /**
@@ -0,0 +1,153 @@
+package SimpleTomcat.compression;
+
+import SimpleTomcat.http.Request;
+import SimpleTomcat.http.Response;
+import cn.hutool.core.util.StrUtil;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CompressionPolicy holds the compression attributes of a <Connector> in the form every response needs them.
+ *  It is built once by Connector.init(): the comma separated lists of server.xml are split, trimmed and put into a
+ *  set, so a response costs a hash lookup for its mime type instead of splitting and scanning strings.
+ *  noCompressionUserAgents are substrings of User-Agent. Clients send the same few User-Agent values again and again,
+ *  so the result of the scan is remembered per User-Agent, up to MAX_USER_AGENTS different values.
+ *  The policy never changes after it is built and is shared by all request threads.
+ */
+public class CompressionPolicy {
+    private static final int MAX_USER_AGENTS = 1024;    // remembered User-Agent values, more are checked every time
+
+    private final boolean enabled;                      // compression="on"
+    private final int minSize;                          // smaller bodies are not compressed
+    private final int maxSize;                          // larger bodies are not compressed, -1 means no limit
+    private final int level;                            // compression level, -1 is the default of the coding
+    private final Set<String> mimeTypes;                // compressible mime types without parameters
+    private final String[] noCompressionUserAgents;     // User-Agent substrings of clients which get no compression
+    private final List<String> encodings;               // content codings, preferred first
+    private final Map<String, Boolean> userAgentCache = new ConcurrentHashMap<>();  // User-Agent -> compression allowed
+
+    /**
+     * build a policy from the connector attributes
+     * @param compression: on enables compression, anything else (or null) disables it
+     * @param minSize: compressionMinSize
+     * @param maxSize: compressionMaxSize, -1 means no limit
+     * @param level: compressionLevel
+     * @param mimeTypes: compressionMimeType, comma separated
+     * @param noCompressionUserAgents: noCompressionUserAgents, comma separated
+     * @param encodings: compressionEncodings, preferred first
+     */
+    public CompressionPolicy(String compression, int minSize, int maxSize, int level, String mimeTypes,
+                             String noCompressionUserAgents, List<String> encodings) {
+        this.enabled = "on".equalsIgnoreCase(StrUtil.trim(compression));
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.level = level;
+        this.mimeTypes = Collections.unmodifiableSet(new HashSet<>(split(mimeTypes)));
+        this.noCompressionUserAgents = split(noCompressionUserAgents).toArray(new String[0]);
+        this.encodings = Collections.unmodifiableList(encodings);
+    }
+
+    /**
+     * split a comma separated attribute, empty items are dropped
+     * @param value: attribute value, may be null
+     * @return items
+     */
+    private static List<String> split(String value) {
+        if (StrUtil.isBlank(value)) {
+            return Collections.emptyList();
+        }
+        return StrUtil.splitTrim(value, ',');
+    }
+
+    /**
+     * choose the content coding of a response body, if it is compressed at all.
+     *  A compressible response gets Vary: Accept-Encoding, whichever coding the client accepts.
+     * @param request: request
+     * @param response: response, not compressed if its servlet already set Content-Encoding
+     * @param length: body length, -1 if unknown because the body is streamed
+     * @return encoder, null if the body is sent as it is
+     */
+    public ContentEncoder getContentEncoder(Request request, Response response, long length) {
+        if (!enabled || response.getHeader("Content-Encoding") != null
+                || !isCompressible(response.getContentType(), length, request.getHeader("User-Agent"))) {
+            return null;
+        }
+        if (response.getHeader("Vary") == null) {
+            // the body depends on Accept-Encoding: caches must not give the gzip body to other clients
+            response.setHeader("Vary", "Accept-Encoding");
+        }
+        return ContentEncoders.negotiate(request.getHeader("Accept-Encoding"), encodings);
+    }
+
+    /**
+     * check whether a body may be compressed. Which coding is used, if any, depends on Accept-Encoding.
+     * @param mimeType: content type, parameters like charset are ignored
+     * @param length: body length, -1 if unknown: the size limits are not checked
+     * @param userAgent: User-Agent of the client, may be null
+     * @return true if the body may be compressed
+     */
+    public boolean isCompressible(String mimeType, long length, String userAgent) {
+        if (!enabled || mimeType == null) {
+            return false;
+        }
+        if (length >= 0 && (length < minSize || (maxSize >= 0 && length > maxSize))) {
+            return false;
+        }
+        int semicolonIndex = mimeType.indexOf(';');
+        if (semicolonIndex != -1) {
+            mimeType = mimeType.substring(0, semicolonIndex).trim();
+        }
+        return mimeTypes.contains(mimeType) && isUserAgentAllowed(userAgent);
+    }
+
+    /**
+     * check a User-Agent against noCompressionUserAgents, remembering the result
+     * @param userAgent: User-Agent, may be null
+     * @return true if the client may get compressed bodies
+     */
+    private boolean isUserAgentAllowed(String userAgent) {
+        if (userAgent == null || noCompressionUserAgents.length == 0) {
+            return true;
+        }
+        Boolean allowed = userAgentCache.get(userAgent);
+        if (allowed != null) {
+            return allowed;
+        }
+
+        allowed = true;
+        for (String noCompressionUserAgent : noCompressionUserAgents) {
+            if (userAgent.contains(noCompressionUserAgent)) {
+                allowed = false;
+                break;
+            }
+        }
+        // User-Agent is chosen by the client: the cache must not grow without limit
+        if (userAgentCache.size() < MAX_USER_AGENTS) {
+            userAgentCache.put(userAgent, allowed);
+        }
+        return allowed;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public String toString() {
+        if (!enabled) {
+            return "off";
+        }
+        return StrUtil.format("minSize={}, maxSize={}, level={}, mimeTypes={}, noCompressionUserAgents={}, encodings={}",
+                minSize, maxSize, level, mimeTypes, Arrays.toString(noCompressionUserAgents), encodings);
+    }
+}
@@ -0,0 +1,38 @@
+package SimpleTomcat.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * ContentEncoder is one content coding of the Content-Encoding header, e.g. gzip.
+ *  gzip and deflate are built in. Other codings (br, zstd) are plugged in without changing the server: put a jar
+ *  with an implementation into lib and list the class in META-INF/services/SimpleTomcat.compression.ContentEncoder,
+ *  ContentEncoders finds it with ServiceLoader. A <Connector> uses the codings named in compressionEncodings.
+ *  Implementations are shared by all request threads, so they must be stateless.
+ */
+public interface ContentEncoder {
+    /**
+     * @return name of the coding in Accept-Encoding and Content-Encoding, e.g. gzip
+     */
+    String getName();
+
+    /**
+     * encode a body
+     * @param data: body
+     * @param level: compression level of the connector, -1 for the default of the coding
+     * @return encoded body
+     * @throws IOException: IOException
+     */
+    byte[] encode(byte[] data, int level) throws IOException;
+
+    /**
+     * wrap a stream for bodies that are encoded while they are written, e.g. committed servlet output
+     *  flush() has to send everything written so far, so a client sees the output a servlet flushes.
+     *  close() has to write the end of the encoded data and then close out.
+     * @param out: stream of the encoded body, e.g. chunked
+     * @param level: compression level of the connector, -1 for the default of the coding
+     * @return stream taking the plain body
+     * @throws IOException: IOException
+     */
+    OutputStream wrap(OutputStream out, int level) throws IOException;
+}
@@ -0,0 +1,103 @@
+package SimpleTomcat.compression;
+
+import cn.hutool.core.convert.Convert;
+import cn.hutool.log.LogFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * ContentEncoders holds all known content codings and negotiates one against Accept-Encoding.
+ *  The codings are loaded once: the built-in gzip and deflate, then every ContentEncoder registered with
+ *  ServiceLoader. A registered coding with the name of a built-in one replaces it.
+ */
+public class ContentEncoders {
+    private static final Map<String, ContentEncoder> encoders = load();   // key: lower case coding name
+
+    private static Map<String, ContentEncoder> load() {
+        Map<String, ContentEncoder> map = new HashMap<>();
+        map.put("gzip", new GzipEncoder());
+        map.put("deflate", new DeflateEncoder());
+        try {
+            // server classes and lib jars are loaded by the common class loader
+            for (ContentEncoder encoder : ServiceLoader.load(ContentEncoder.class, ContentEncoder.class.getClassLoader())) {
+                map.put(encoder.getName().toLowerCase(), encoder);
+                LogFactory.get().info("Content encoder [{}] {} registered", encoder.getName(), encoder.getClass().getName());
+            }
+        } catch (ServiceConfigurationError e) {
+            LogFactory.get().error(e);
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * get a coding by name
+     * @param name: e.g. gzip
+     * @return encoder, null if no encoder is available for this coding
+     */
+    public static ContentEncoder get(String name) {
+        return encoders.get(name.toLowerCase());
+    }
+
+    /**
+     * quality value of a coding in Accept-Encoding
+     *  gzip;q=0.8 gives 0.8, gzip gives 1, a coding which is not listed gets the quality of *, or 0 without *.
+     * @param acceptEncoding: value of Accept-Encoding, e.g. br;q=1.0, gzip;q=0.8, *;q=0.1
+     * @param coding: content coding
+     * @return quality between 0 and 1, 0 means not acceptable
+     */
+    public static double getQuality(String acceptEncoding, String coding) {
+        if (acceptEncoding == null) {
+            return 0;
+        }
+        double wildcard = 0;
+        for (String item : acceptEncoding.split(",")) {
+            String[] parts = item.split(";");
+            String name = parts[0].trim();
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.regionMatches(true, 0, "q=", 0, 2)) {
+                    quality = Math.max(0, Math.min(1, Convert.toDouble(param.substring(2), 1.0)));
+                }
+            }
+            if (name.equalsIgnoreCase(coding)) {
+                return quality;
+            }
+            if (name.equals("*")) {
+                wildcard = quality;
+            }
+        }
+        return wildcard;
+    }
+
+    /**
+     * choose the coding with the highest quality the client accepts. On equal quality the order of the server wins.
+     * @param acceptEncoding: value of Accept-Encoding
+     * @param codings: codings enabled on the connector, preferred first
+     * @return encoder, or null if the body is sent as it is
+     */
+    public static ContentEncoder negotiate(String acceptEncoding, List<String> codings) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        ContentEncoder best = null;
+        double bestQuality = 0;
+        for (String coding : codings) {
+            ContentEncoder encoder = get(coding);
+            if (encoder == null) {
+                continue;
+            }
+            double quality = getQuality(acceptEncoding, coding);
+            if (quality > bestQuality) {
+                best = encoder;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+}
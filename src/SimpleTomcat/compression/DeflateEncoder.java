@@ -0,0 +1,53 @@
+package SimpleTomcat.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * DeflateEncoder: Content-Encoding deflate, which is the zlib format (RFC 1950), not raw deflate
+ */
+public class DeflateEncoder implements ContentEncoder {
+    private static final int BUFFER_SIZE = 8192;    // compressed bytes written to out at once
+    @Override
+    public String getName() {
+        return "deflate";
+    }
+
+    @Override
+    public byte[] encode(byte[] data, int level) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(data.length / 4, 64));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                bytes.write(buffer, 0, count);
+            }
+            return bytes.toByteArray();
+        } finally {
+            // release native memory now instead of waiting for the garbage collector
+            deflater.end();
+        }
+    }
+
+    @Override
+    public OutputStream wrap(OutputStream out, int level) {
+        Deflater deflater = new Deflater(level);
+        return new DeflaterOutputStream(out, deflater, BUFFER_SIZE, true) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    // a Deflater passed in is not ended by DeflaterOutputStream
+                    deflater.end();
+                }
+            }
+        };
+    }
+}
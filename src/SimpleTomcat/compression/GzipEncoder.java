@@ -0,0 +1,42 @@
+package SimpleTomcat.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * GzipEncoder: Content-Encoding gzip, the coding every client supports
+ */
+public class GzipEncoder implements ContentEncoder {
+    private static final int BUFFER_SIZE = 8192;    // compressed bytes written to out at once
+    @Override
+    public String getName() {
+        return "gzip";
+    }
+
+    @Override
+    public byte[] encode(byte[] data, int level) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(data.length / 4, 64));
+        try (GZIPOutputStream gzip = new LevelGZIPOutputStream(bytes, level)) {
+            gzip.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public OutputStream wrap(OutputStream out, int level) throws IOException {
+        return new LevelGZIPOutputStream(out, level);
+    }
+
+    /**
+     * GZIPOutputStream always uses the default level, its Deflater is only reachable by a subclass.
+     *  syncFlush: flush() sends all data compressed so far instead of keeping it in the Deflater.
+     */
+    static class LevelGZIPOutputStream extends GZIPOutputStream {
+        LevelGZIPOutputStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE, true);
+            def.setLevel(level);
+        }
+    }
+}
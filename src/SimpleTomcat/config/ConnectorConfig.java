@@ -0,0 +1,23 @@
+package SimpleTomcat.config;
+
+import java.util.Map;
+
+/**
+ * ConnectorConfig: a <Connector> of server.xml and its optional nested <Executor>
+ */
+public class ConnectorConfig extends ElementConfig {
+    private final ElementConfig executor;   // nested <Executor>, null if the connector uses the defaults
+
+    public ConnectorConfig(int line, Map<String, String> attributes, ElementConfig executor) {
+        super("Connector", line, attributes);
+        this.executor = executor;
+    }
+
+    public int getPort() {
+        return getInt("port", 0);
+    }
+
+    public ElementConfig getExecutor() {
+        return executor;
+    }
+}
@@ -0,0 +1,36 @@
+package SimpleTomcat.config;
+
+import java.util.Map;
+
+/**
+ * ContextConfig: a <Context> of a <Host> in server.xml
+ *  path and docBase are required. lazy, idleTimeout, unloadDelay, precompileJsp and
+ *  jspCheckInterval fall back to the <Context> of context.xml, see
+ *  ServerConfig.getContextDefaults.
+ */
+public class ContextConfig extends ElementConfig {
+    public ContextConfig(int line, Map<String, String> attributes) {
+        super("Context", line, attributes);
+    }
+
+    /**
+     * @return url path, e.g. /b
+     */
+    public String getPath() {
+        return getAttribute("path");
+    }
+
+    /**
+     * @return directory of the web app
+     */
+    public String getDocBase() {
+        return getAttribute("docBase");
+    }
+
+    /**
+     * @return reload the context when its classes change
+     */
+    public boolean isReloadable() {
+        return getBool("reloadable", false);
+    }
+}
@@ -0,0 +1,70 @@
+package SimpleTomcat.config;
+
+import cn.hutool.core.convert.Convert;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ElementConfig is one element of a configuration file with its attributes, e.g. <Executor maxThreads="200"/>
+ *  Numbers and booleans have been checked by ServerConfigParser, so the typed getters only fall back to the default
+ *  when an attribute is absent.
+ */
+public class ElementConfig {
+    private final String name;                      // element name
+    private final int line;                         // line of the element in the file
+    private final Map<String, String> attributes;   // attributes in file order
+
+    public ElementConfig(String name, int line, Map<String, String> attributes) {
+        this.name = name;
+        this.line = line;
+        this.attributes = Collections.unmodifiableMap(new LinkedHashMap<>(attributes));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+    public boolean hasAttribute(String name) {
+        return attributes.containsKey(name);
+    }
+
+    /**
+     * @param name: attribute name
+     * @return attribute value, null if absent
+     */
+    public String getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    public String getAttribute(String name, String defaultValue) {
+        String value = attributes.get(name);
+        return value != null ? value : defaultValue;
+    }
+
+    public int getInt(String name, int defaultValue) {
+        return Convert.toInt(attributes.get(name), defaultValue);
+    }
+
+    public long getLong(String name, long defaultValue) {
+        return Convert.toLong(attributes.get(name), defaultValue);
+    }
+
+    public boolean getBool(String name, boolean defaultValue) {
+        return Convert.toBool(attributes.get(name), defaultValue);
+    }
+
+    @Override
+    public String toString() {
+        return "<" + name + "> " + attributes;
+    }
+}
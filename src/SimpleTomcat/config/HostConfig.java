@@ -0,0 +1,37 @@
+package SimpleTomcat.config;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * HostConfig: a <Host> of server.xml with its <Context> elements
+ */
+public class HostConfig {
+    private final String name;                  // host name, e.g. localhost
+    private final List<ContextConfig> contexts; // contexts declared in server.xml, web apps of the webapps folder are not in here
+    private final int startStopThreads;         // threads deploying the contexts: 0 for one per cpu, -n for n less than that
+    private final int line;                     // line in server.xml
+
+    public HostConfig(String name, List<ContextConfig> contexts, int startStopThreads, int line) {
+        this.name = name;
+        this.contexts = Collections.unmodifiableList(contexts);
+        this.startStopThreads = startStopThreads;
+        this.line = line;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<ContextConfig> getContexts() {
+        return contexts;
+    }
+
+    public int getStartStopThreads() {
+        return startStopThreads;
+    }
+
+    public int getLine() {
+        return line;
+    }
+}
@@ -0,0 +1,61 @@
+package SimpleTomcat.config;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ServerConfig is the parsed content of conf/server.xml and conf/context.xml.
+ *  It is read once by ServerConfigParser when the Server is created and handed down Server -> Service -> Engine ->
+ *  Host -> Context, so no part of the server reads these files again. It never changes after parsing.
+ */
+public class ServerConfig {
+    private final String serviceName;                   // <Service name>
+    private final List<ConnectorConfig> connectors;     // <Connector> elements of the service
+    private final String defaultHost;                   // <Engine defaultHost>
+    private final List<HostConfig> hosts;               // <Host> elements of the engine
+    private final ElementConfig contextDefaults;        // context.xml <Context>: defaults of every Context
+    private final String watchedResource;               // context.xml <WatchedResource>: web.xml of every web app
+    private final ElementConfig resources;              // context.xml <Resources>, null if absent
+
+    public ServerConfig(String serviceName, List<ConnectorConfig> connectors, String defaultHost, List<HostConfig> hosts,
+                        ElementConfig contextDefaults, String watchedResource, ElementConfig resources) {
+        this.serviceName = serviceName;
+        this.connectors = Collections.unmodifiableList(connectors);
+        this.defaultHost = defaultHost;
+        this.hosts = Collections.unmodifiableList(hosts);
+        this.contextDefaults = contextDefaults;
+        this.watchedResource = watchedResource;
+        this.resources = resources;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public List<ConnectorConfig> getConnectors() {
+        return connectors;
+    }
+
+    public String getDefaultHost() {
+        return defaultHost;
+    }
+
+    public List<HostConfig> getHosts() {
+        return hosts;
+    }
+
+    /**
+     * @return attributes of <Context> in context.xml, used by every Context which does not set them itself
+     */
+    public ElementConfig getContextDefaults() {
+        return contextDefaults;
+    }
+
+    public String getWatchedResource() {
+        return watchedResource;
+    }
+
+    public ElementConfig getResources() {
+        return resources;
+    }
+}
@@ -0,0 +1,371 @@
+package SimpleTomcat.config;
+
+import SimpleTomcat.exception.ServerConfigException;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.log.LogFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ServerConfigParser reads conf/server.xml and conf/context.xml into a ServerConfig.
+ *  The files are read once with a StAX stream reader: no DOM is built, and every element knows its line number.
+ *  Attributes are checked while reading: a number which is not a number, an unknown protocol or a duplicated port
+ *  stops the start with a ServerConfigException naming file and line, instead of a NumberFormatException later on.
+ *  Elements the server does not know are skipped with a warning.
+ *
+ *  server.xml: Server > Service > (Connector > Executor), (Engine > Host > Context)
+ *  context.xml: Context (defaults of every Context) > WatchedResource, Resources
+ */
+public class ServerConfigParser {
+    private static final String DEFAULT_WATCHED_RESOURCE = "WEB-INF/web.xml";
+
+    // attributes which have to be whole numbers
+    private static final Set<String> CONNECTOR_INT_ATTRIBUTES = new HashSet<>(Arrays.asList("port", "compressionMinSize",
+            "compressionMaxSize", "compressionLevel", "connectionTimeout", "keepAliveTimeout", "maxKeepAliveRequests",
+            "maxPostSize"));
+    private static final Set<String> EXECUTOR_INT_ATTRIBUTES = new HashSet<>(Arrays.asList("minSpareThreads", "maxThreads",
+            "maxQueueSize", "maxIdleTime"));
+    private static final Set<String> HOST_INT_ATTRIBUTES = new HashSet<>(Arrays.asList("startStopThreads"));
+    private static final Set<String> CONTEXT_INT_ATTRIBUTES = new HashSet<>(Arrays.asList("idleTimeout", "unloadDelay", "jspCheckInterval"));
+    private static final Set<String> RESOURCES_INT_ATTRIBUTES = new HashSet<>(Arrays.asList("cacheMaxSize",
+            "cacheObjectMaxSize", "cacheTtl", "sendfileSize"));
+    private static final Set<String> RESOURCES_BOOL_ATTRIBUTES = new HashSet<>(Arrays.asList("cachingAllowed", "precompress"));
+
+    private final String fileName;      // name of the file being read, for error messages
+    private XMLStreamReader reader;     // reader of the file being read
+
+    private ServerConfigParser(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * parse the configuration of the server
+     * @param serverXml: conf/server.xml, required
+     * @param contextXml: conf/context.xml, defaults are used if it does not exist
+     * @return configuration
+     * @throws ServerConfigException: a file is missing, not well-formed or has an invalid element
+     */
+    public static ServerConfig parse(File serverXml, File contextXml) throws ServerConfigException {
+        ServerConfigParser serverParser = new ServerConfigParser(serverXml.getName());
+        ServerXml server = serverParser.read(serverXml, serverParser::parseServerXml);
+
+        ElementConfig contextDefaults = new ElementConfig("Context", -1, Collections.emptyMap());
+        String watchedResource = DEFAULT_WATCHED_RESOURCE;
+        ElementConfig resources = null;
+        if (contextXml.exists()) {
+            ServerConfigParser contextParser = new ServerConfigParser(contextXml.getName());
+            ContextXml context = contextParser.read(contextXml, contextParser::parseContextXml);
+            contextDefaults = context.contextDefaults != null ? context.contextDefaults : contextDefaults;
+            watchedResource = context.watchedResource;
+            resources = context.resources;
+        }
+
+        return new ServerConfig(server.serviceName, server.connectors, server.defaultHost, server.hosts,
+                contextDefaults, watchedResource, resources);
+    }
+
+    /**
+     * a step reading one file with this parser's reader
+     * @param <T>: result
+     */
+    private interface FileParser<T> {
+        T parse() throws XMLStreamException, ServerConfigException;
+    }
+
+    /**
+     * open a file and run a parse step on it
+     * @param file: file
+     * @param fileParser: step using reader
+     * @param <T>: result
+     * @return result of the step
+     * @throws ServerConfigException: file missing or invalid
+     */
+    private <T> T read(File file, FileParser<T> fileParser) throws ServerConfigException {
+        if (!file.isFile()) {
+            throw new ServerConfigException(fileName, -1, "file " + file.getAbsolutePath() + " not found");
+        }
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // configuration files need no DTD, and must not pull in other files
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try (InputStream inputStream = new FileInputStream(file)) {
+            reader = factory.createXMLStreamReader(inputStream);
+            try {
+                return fileParser.parse();
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            int line = e.getLocation() != null ? e.getLocation().getLineNumber() : -1;
+            // the message of the reader repeats the location before "Message: "
+            String msg = e.getMessage().contains("Message: ") ? StrUtil.subAfter(e.getMessage(), "Message: ", false) : e.getMessage();
+            throw new ServerConfigException(fileName, line, "not well-formed: " + msg);
+        } catch (IOException e) {
+            throw new ServerConfigException(fileName, -1, e.toString());
+        }
+    }
+
+    /**
+     * content of server.xml while it is read
+     */
+    private static class ServerXml {
+        private String serviceName;
+        private final List<ConnectorConfig> connectors = new ArrayList<>();
+        private String defaultHost;
+        private int engineLine = -1;
+        private final List<HostConfig> hosts = new ArrayList<>();
+    }
+
+    /**
+     * content of context.xml while it is read
+     */
+    private static class ContextXml {
+        private ElementConfig contextDefaults;
+        private String watchedResource = DEFAULT_WATCHED_RESOURCE;
+        private ElementConfig resources;
+    }
+
+    private ServerXml parseServerXml() throws XMLStreamException, ServerConfigException {
+        ServerXml server = new ServerXml();
+        Deque<String> path = new ArrayDeque<>();    // names of the open elements, innermost first
+        Set<Integer> ports = new HashSet<>();
+
+        // state of the open <Connector> and <Host>
+        Map<String, String> connectorAttributes = null;
+        int connectorLine = -1;
+        ElementConfig executor = null;
+        String hostName = null;
+        int startStopThreads = 0;
+        int hostLine = -1;
+        List<ContextConfig> contexts = null;
+        Set<String> contextPaths = null;
+
+        while (reader.hasNext()) {
+            // the reader is now where the next tag begins, after it has read a tag the location is its end
+            int startLine = reader.getLocation().getLineNumber();
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                String name = path.pop();
+                if (name.equals("Connector") && connectorAttributes != null) {
+                    server.connectors.add(new ConnectorConfig(connectorLine, connectorAttributes, executor));
+                    connectorAttributes = null;
+                } else if (name.equals("Host") && hostName != null) {
+                    server.hosts.add(new HostConfig(hostName, contexts, startStopThreads, hostLine));
+                    hostName = null;
+                }
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+
+            String name = reader.getLocalName();
+            String parent = path.peek();
+            int line = startLine;
+            Map<String, String> attributes = getAttributes();
+            path.push(name);
+
+            if (name.equals("Server") && parent == null) {
+                continue;
+            }
+            if (name.equals("Service") && "Server".equals(parent)) {
+                if (server.serviceName != null) {
+                    throw error(line, "only one <Service> is supported");
+                }
+                server.serviceName = attributes.getOrDefault("name", "Catalina");
+            } else if (name.equals("Connector") && "Service".equals(parent)) {
+                checkInts(name, attributes, CONNECTOR_INT_ATTRIBUTES, line);
+                String port = require(name, attributes, "port", line);
+                int portNumber = Integer.parseInt(port);
+                if (portNumber < 1 || portNumber > 65535) {
+                    throw error(line, StrUtil.format("<Connector> port=\"{}\" is out of range 1-65535", port));
+                }
+                if (!ports.add(portNumber)) {
+                    throw error(line, StrUtil.format("<Connector> port=\"{}\" is used by another connector", port));
+                }
+                checkChoice(name, attributes, "protocol", line, "bio", "nio");
+                checkChoice(name, attributes, "executor", line, "platform", "virtual");
+                checkChoice(name, attributes, "compression", line, "on", "off");
+                connectorAttributes = attributes;
+                connectorLine = line;
+                executor = null;
+            } else if (name.equals("Executor") && "Connector".equals(parent)) {
+                checkInts(name, attributes, EXECUTOR_INT_ATTRIBUTES, line);
+                checkChoice(name, attributes, "rejectionPolicy", line, "503", "close");
+                executor = new ElementConfig(name, line, attributes);
+            } else if (name.equals("Engine") && "Service".equals(parent)) {
+                server.defaultHost = require(name, attributes, "defaultHost", line);
+                server.engineLine = line;
+            } else if (name.equals("Host") && "Engine".equals(parent)) {
+                hostName = require(name, attributes, "name", line);
+                checkInts(name, attributes, HOST_INT_ATTRIBUTES, line);
+                startStopThreads = Integer.parseInt(attributes.getOrDefault("startStopThreads", "0"));
+                hostLine = line;
+                contexts = new ArrayList<>();
+                contextPaths = new HashSet<>();
+            } else if (name.equals("Context") && "Host".equals(parent)) {
+                String contextPath = require(name, attributes, "path", line);
+                String docBase = require(name, attributes, "docBase", line);
+                if (!contextPath.startsWith("/")) {
+                    throw error(line, StrUtil.format("<Context> path=\"{}\" has to start with /", contextPath));
+                }
+                if (!contextPaths.add(contextPath)) {
+                    throw error(line, StrUtil.format("<Context> path=\"{}\" is declared twice in host {}", contextPath, hostName));
+                }
+                checkContextAttributes(attributes, line);
+                contexts.add(new ContextConfig(line, attributes));
+            } else {
+                LogFactory.get().warn("{} line {}: unknown element <{}> in <{}> is ignored", fileName, line, name, parent);
+            }
+        }
+
+        if (server.serviceName == null) {
+            throw error(-1, "<Service> not found");
+        }
+        if (server.defaultHost == null) {
+            throw error(-1, "<Engine> not found");
+        }
+        boolean defaultHostFound = false;
+        for (HostConfig host : server.hosts) {
+            defaultHostFound |= host.getName().equals(server.defaultHost);
+        }
+        if (!defaultHostFound) {
+            throw error(server.engineLine, StrUtil.format("<Engine> defaultHost=\"{}\" is not the name of a <Host>", server.defaultHost));
+        }
+        return server;
+    }
+
+    private ContextXml parseContextXml() throws XMLStreamException, ServerConfigException {
+        ContextXml context = new ContextXml();
+        Deque<String> path = new ArrayDeque<>();
+
+        while (reader.hasNext()) {
+            // the reader is now where the next tag begins, after it has read a tag the location is its end
+            int startLine = reader.getLocation().getLineNumber();
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                path.pop();
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+
+            String name = reader.getLocalName();
+            String parent = path.peek();
+            int line = startLine;
+            Map<String, String> attributes = getAttributes();
+
+            if (name.equals("WatchedResource") && "Context".equals(parent)) {
+                // getElementText reads up to the end tag, which is never seen by the loop
+                String text = reader.getElementText().trim();
+                if (text.isEmpty()) {
+                    throw error(line, "<WatchedResource> is empty");
+                }
+                context.watchedResource = text;
+                continue;
+            }
+            path.push(name);
+            if (name.equals("Context") && parent == null) {
+                checkContextAttributes(attributes, line);
+                context.contextDefaults = new ElementConfig(name, line, attributes);
+                continue;
+            }
+            if (name.equals("Resources") && "Context".equals(parent)) {
+                checkInts(name, attributes, RESOURCES_INT_ATTRIBUTES, line);
+                for (String bool : RESOURCES_BOOL_ATTRIBUTES) {
+                    checkBool(name, attributes, bool, line);
+                }
+                context.resources = new ElementConfig(name, line, attributes);
+            } else {
+                LogFactory.get().warn("{} line {}: unknown element <{}> in <{}> is ignored", fileName, line, name, parent);
+            }
+        }
+        return context;
+    }
+
+    /**
+     * check the attributes of a <Context>, in server.xml or as defaults in context.xml
+     * @param attributes: attributes
+     * @param line: line
+     * @throws ServerConfigException: invalid attribute
+     */
+    private void checkContextAttributes(Map<String, String> attributes, int line) throws ServerConfigException {
+        checkBool("Context", attributes, "reloadable", line);
+        checkBool("Context", attributes, "lazy", line);
+        checkBool("Context", attributes, "precompileJsp", line);
+        checkInts("Context", attributes, CONTEXT_INT_ATTRIBUTES, line);
+    }
+
+    /**
+     * @return attributes of the current start element, values trimmed
+     */
+    private Map<String, String> getAttributes() {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            attributes.put(reader.getAttributeLocalName(i), reader.getAttributeValue(i).trim());
+        }
+        return attributes;
+    }
+
+    private String require(String element, Map<String, String> attributes, String name, int line) throws ServerConfigException {
+        String value = attributes.get(name);
+        if (StrUtil.isEmpty(value)) {
+            throw error(line, StrUtil.format("<{}> requires attribute {}", element, name));
+        }
+        return value;
+    }
+
+    private void checkInts(String element, Map<String, String> attributes, Set<String> names, int line) throws ServerConfigException {
+        for (String name : names) {
+            String value = attributes.get(name);
+            if (value == null) {
+                continue;
+            }
+            try {
+                Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw error(line, StrUtil.format("<{}> {}=\"{}\" is not a whole number", element, name, value));
+            }
+        }
+    }
+
+    private void checkBool(String element, Map<String, String> attributes, String name, int line) throws ServerConfigException {
+        checkChoice(element, attributes, name, line, "true", "false");
+    }
+
+    private void checkChoice(String element, Map<String, String> attributes, String name, int line, String... choices)
+            throws ServerConfigException {
+        String value = attributes.get(name);
+        if (value == null) {
+            return;
+        }
+        for (String choice : choices) {
+            if (choice.equalsIgnoreCase(value)) {
+                return;
+            }
+        }
+        throw error(line, StrUtil.format("<{}> {}=\"{}\" has to be one of {}", element, name, value, Arrays.toString(choices)));
+    }
+
+    private ServerConfigException error(int line, String msg) {
+        return new ServerConfigException(fileName, line, msg);
+    }
+}
@@ -0,0 +1,29 @@
+package SimpleTomcat.exception;
+
+import SimpleTomcat.util.Constant;
+
+import java.io.IOException;
+
+/**
+ * BadRequestException is thrown by HttpRequestParser for a request the server refuses to read, e.g. one with
+ * conflicting Content-Length headers. The connector sends getResponse() and closes the connection, because the
+ * end of the request, and so the start of the next one, is unknown.
+ */
+public class BadRequestException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * BadRequest exception
+     * @param msg: error msg
+     */
+    public BadRequestException(String msg) {
+        super(msg);
+    }
+
+    /**
+     * @return complete response with Connection: close
+     */
+    public String getResponse() {
+        return Constant.response_400;
+    }
+}
@@ -0,0 +1,24 @@
+package SimpleTomcat.exception;
+
+import SimpleTomcat.util.Constant;
+
+/**
+ * RequestTooLargeException is thrown by HttpRequestParser when the Content-Length of a request exceeds the
+ * maxPostSize of its Connector. The body is not read, the connector answers 413 and closes the connection.
+ */
+public class RequestTooLargeException extends BadRequestException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * RequestTooLarge exception
+     * @param msg: error msg
+     */
+    public RequestTooLargeException(String msg) {
+        super(msg);
+    }
+
+    @Override
+    public String getResponse() {
+        return Constant.response_413;
+    }
+}
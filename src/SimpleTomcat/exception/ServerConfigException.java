@@ -0,0 +1,29 @@
+package SimpleTomcat.exception;
+
+/**
+ * ServerConfigException is the exception that happens during the loading of server.xml or context.xml
+ *  The message names the file and the line of the element, so a broken configuration can be fixed without guessing.
+ */
+public class ServerConfigException extends Exception {
+    private static final long serialVersionUID = 1L;
+    private final int line;     // line number in the file, -1 if unknown
+
+    /**
+     * ServerConfig exception
+     *  Some common exceptions:
+     *      xml: not well-formed
+     *      attribute: required but missing, not a number, unknown value
+     *      element: duplicated port or context path, defaultHost not found
+     * @param fileName: name of the configuration file, e.g. server.xml
+     * @param line: line number, -1 if unknown
+     * @param msg: error msg
+     */
+    public ServerConfigException(String fileName, int line, String msg) {
+        super(line < 0 ? fileName + ": " + msg : fileName + " line " + line + ": " + msg);
+        this.line = line;
+    }
+
+    public int getLine() {
+        return line;
+    }
+}
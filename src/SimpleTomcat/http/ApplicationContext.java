@@ -1,6 +1,7 @@
 package SimpleTomcat.http;
 
 import SimpleTomcat.catalina.Context;
+import cn.hutool.core.io.FileUtil;
 
 import java.io.File;
 import java.util.*;
@@ -39,6 +40,16 @@ public class ApplicationContext extends BaseServletContext {
         return Collections.enumeration(keys);
     }
 
+    /**
+     * Get mime type of a file from the mime mappings of this web app and conf/web.xml
+     * @param file: file name or path
+     * @return mime type, null if the extension is unknown
+     */
+    @Override
+    public String getMimeType(String file) {
+        return context.getMimeTypes().getMimeType(FileUtil.extName(file));
+    }
+
     /**
      * Get Real Path in the file system
      * @param path
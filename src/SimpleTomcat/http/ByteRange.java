@@ -0,0 +1,166 @@
+package SimpleTomcat.http;
+
+import cn.hutool.core.util.StrUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ByteRange is one range of a Range request header, e.g. Range: bytes=0-499,1000-
+ *  start and end are inclusive positions in the body, already resolved against the body length.
+ */
+public class ByteRange {
+    private static final int MAX_RANGES = 16;   // more ranges than this are treated like no Range header
+
+    private final long start;   // first byte
+    private final long end;     // last byte (inclusive)
+
+    private ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * parse a Range header
+     *  first-last: bytes first to last, last is limited to length - 1
+     *  first-: bytes first to the end
+     *  -suffix: last suffix bytes
+     *  Overlapping ranges are merged.
+     * @param header: value of Range header
+     * @param length: body length
+     * @return satisfiable ranges, an empty list if no range is satisfiable (416),
+     *  or null if the header is invalid or not in bytes, in which case it is ignored (200)
+     */
+    public static List<ByteRange> parse(String header, long length) {
+        header = header.trim();
+        if (!header.startsWith("bytes=")) {
+            return null;
+        }
+
+        String[] specs = StrUtil.removePrefix(header, "bytes=").split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+
+        List<ByteRange> ranges = new ArrayList<>();
+        boolean empty = true;       // no range spec at all
+        for (String spec : specs) {
+            spec = spec.trim();
+            if (spec.isEmpty()) {
+                // empty list elements are allowed, e.g. bytes=0-9,
+                continue;
+            }
+            empty = false;
+            int dashIndex = spec.indexOf('-');
+            if (dashIndex == -1) {
+                return null;
+            }
+            String first = spec.substring(0, dashIndex).trim();
+            String last = spec.substring(dashIndex + 1).trim();
+
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // suffix range
+                long suffix = parsePosition(last);
+                if (suffix == -1) {
+                    return null;
+                }
+                if (suffix == 0) {
+                    continue;
+                }
+                start = Math.max(length - suffix, 0);
+                end = length - 1;
+            } else {
+                start = parsePosition(first);
+                long lastPosition = last.isEmpty() ? length - 1 : parsePosition(last);
+                if (start == -1 || (!last.isEmpty() && (lastPosition == -1 || lastPosition < start))) {
+                    return null;
+                }
+                end = Math.min(lastPosition, length - 1);
+            }
+            if (start >= length) {
+                // not satisfiable, other ranges may be
+                continue;
+            }
+            ranges.add(new ByteRange(start, end));
+        }
+        if (empty) {
+            return null;
+        }
+        return coalesce(ranges);
+    }
+
+    /**
+     * parse a position of a range spec: digits only, no sign
+     * @param value: position
+     * @return position, -1 if value is not a valid position
+     */
+    private static long parsePosition(String value) {
+        if (value.isEmpty()) {
+            return -1;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * merge overlapping ranges, as RFC 7233 allows, so no byte is sent twice.
+     *  Ranges which do not overlap are kept in the order of the header.
+     * @param ranges: satisfiable ranges
+     * @return ranges without overlaps, sorted by start if any were merged
+     */
+    private static List<ByteRange> coalesce(List<ByteRange> ranges) {
+        if (ranges.size() < 2) {
+            return ranges;
+        }
+        List<ByteRange> sorted = new ArrayList<>(ranges);
+        sorted.sort((a, b) -> Long.compare(a.start, b.start));
+        List<ByteRange> merged = new ArrayList<>();
+        ByteRange current = sorted.get(0);
+        for (int i = 1; i < sorted.size(); i++) {
+            ByteRange next = sorted.get(i);
+            if (next.start <= current.end) {
+                current = new ByteRange(current.start, Math.max(current.end, next.end));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged.size() == ranges.size() ? ranges : merged;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * @return number of bytes in this range
+     */
+    public long getLength() {
+        return end - start + 1;
+    }
+
+    /**
+     * value of Content-Range header
+     * @param length: body length
+     * @return e.g. bytes 0-499/1234
+     */
+    public String toContentRange(long length) {
+        return StrUtil.format("bytes {}-{}/{}", start, end, length);
+    }
+}
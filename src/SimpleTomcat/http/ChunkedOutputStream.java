@@ -0,0 +1,103 @@
+package SimpleTomcat.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ChunkedOutputStream writes a body with Transfer-Encoding: chunked, used when the length of a response is
+ * unknown at the time its head is sent.
+ *  Every write becomes one chunk: size in hex, CRLF, data, CRLF. finish() writes the last, empty chunk.
+ *  Size line, data and trailing CRLF are copied into one buffer and written to the socket at once, so a chunk
+ *  leaves in as few TCP segments as its size allows. Writes larger than MAX_CHUNK_SIZE become several
+ *  chunks, which keeps the buffer bounded.
+ *  The underlying socket stream is never closed here, the connection may be kept alive.
+ */
+public class ChunkedOutputStream extends OutputStream {
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final int MAX_CHUNK_SIZE = 65536;    // max data bytes per chunk
+    private static final int CHUNK_OVERHEAD = 12;       // size line (up to 8 hex digits) and two CRLFs
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.ISO_8859_1);
+
+    private final OutputStream out;     // socket output stream
+    private byte[] chunk = new byte[0]; // size line, data and CRLF of the chunk being written, grown on demand
+    private boolean finished;           // last chunk has been written
+
+    public ChunkedOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("Chunked body is already finished");
+        }
+        if (len == 0) {
+            // an empty chunk would end the body
+            return;
+        }
+        while (len > 0) {
+            int size = Math.min(len, MAX_CHUNK_SIZE);
+            writeChunk(b, off, size);
+            off += size;
+            len -= size;
+        }
+    }
+
+    /**
+     * write one chunk with a single write to the socket stream
+     * @param b: data
+     * @param off: offset
+     * @param len: number of bytes, 1 to MAX_CHUNK_SIZE
+     * @throws IOException: IOException
+     */
+    private void writeChunk(byte[] b, int off, int len) throws IOException {
+        if (chunk.length < len + CHUNK_OVERHEAD) {
+            chunk = new byte[len + CHUNK_OVERHEAD];
+        }
+        int digits = (Integer.SIZE - Integer.numberOfLeadingZeros(len) + 3) / 4;
+        int position = 0;
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            chunk[position++] = HEX_DIGITS[(len >>> shift) & 0xF];
+        }
+        chunk[position++] = '\r';
+        chunk[position++] = '\n';
+        System.arraycopy(b, off, chunk, position, len);
+        position += len;
+        chunk[position++] = '\r';
+        chunk[position++] = '\n';
+        out.write(chunk, 0, position);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * write the last chunk
+     * @throws IOException: IOException
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        out.write(LAST_CHUNK);
+        out.flush();
+    }
+
+    /**
+     * finish the body, but keep the socket open
+     * @throws IOException: IOException
+     */
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+}
@@ -0,0 +1,331 @@
+package SimpleTomcat.http;
+
+import SimpleTomcat.exception.BadRequestException;
+import SimpleTomcat.exception.RequestTooLargeException;
+import cn.hutool.core.util.StrUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * HttpRequestParser is a state machine parser for http requests which arrive in several reads.
+ *  Bytes are appended to a byte buffer owned by the connection, either from a blocking input stream (fill)
+ *  or from a NIO read (append). Every call of parse() continues where the last one stopped, so each byte is
+ *  looked at once: method, uri, query string, protocol and headers are cut out of the buffer in one pass
+ *  and the request as a whole is never converted to a String.
+ *  The body is exactly Content-Length bytes. Bytes following it belong to the next (pipelined) request
+ *  and stay buffered when recycle() prepares the parser for the next request of a keep-alive connection.
+ *  A Content-Length above maxPostSize is refused as soon as the header is parsed, so the buffer never grows
+ *  beyond the header block plus maxPostSize.
+ */
+public class HttpRequestParser {
+    private static final int INITIAL_SIZE = 1024;           // initial buffer size
+    private static final int MAX_RETAINED_SIZE = 65536;     // a buffer grown larger by a big body is not kept after the request
+    private static final int MAX_HEADER_SIZE = 8192;        // max size of request line plus headers
+
+    // parser states
+    private static final int REQUEST_LINE_START = 0;        // skipping empty lines before the request line
+    private static final int METHOD = 1;
+    private static final int URI = 2;
+    private static final int PROTOCOL = 3;
+    private static final int HEADER_LINE_START = 4;
+    private static final int HEADER_NAME = 5;
+    private static final int HEADER_VALUE = 6;
+    private static final int BODY = 7;
+    private static final int DONE = 8;
+
+    private byte[] buffer;                  // received bytes
+    private int length;                     // number of valid bytes in buffer
+    private int position;                   // next byte to parse
+    private int state;                      // parser state
+    private int tokenStart;                 // start of the token being parsed
+    private int queryStart;                 // index of '?' in uri, -1 if none
+    private String headerName;              // name of the header whose value is being parsed
+    private int bodyStart;                  // index of the first body byte
+    private int contentLength;              // body length announced by Content-Length header
+    private boolean contentLengthSeen;      // a Content-Length header has been parsed
+    private final int maxPostSize;          // max body length in bytes, -1 means no limit
+
+    private String method;                  // http method
+    private String requestUri;              // uri without query string
+    private String queryString;             // query string, null if none
+    private String protocol;                // e.g. HTTP/1.1
+    private Map<String, String> headers;    // headers. key: lower case name, value: value
+    private byte[] body;                    // body, null if empty
+
+    /**
+     * Constructor
+     * @param maxPostSize: max body length in bytes, -1 means no limit
+     */
+    public HttpRequestParser(int maxPostSize) {
+        this.maxPostSize = maxPostSize;
+        this.buffer = new byte[INITIAL_SIZE];
+        this.headers = new HashMap<>();
+    }
+
+    /**
+     * append readable bytes of the given byte buffer
+     * @param byteBuffer: byte buffer in read mode
+     */
+    public void append(ByteBuffer byteBuffer) {
+        int size = byteBuffer.remaining();
+        ensureCapacity(length + size);
+        byteBuffer.get(buffer, length, size);
+        length += size;
+    }
+
+    /**
+     * read available bytes from a blocking input stream
+     * @param is: input stream
+     * @return false if the stream is closed by client
+     * @throws IOException: IOException
+     */
+    public boolean fill(InputStream is) throws IOException {
+        ensureCapacity(length + INITIAL_SIZE);
+        int readSize = is.read(buffer, length, buffer.length - length);
+        if (readSize == -1) {
+            return false;
+        }
+        length += readSize;
+        return true;
+    }
+
+    /**
+     * parse buffered bytes
+     * @return true if a whole request (header block and body) is parsed
+     * @throws IOException: malformed or unsupported request, the connection has to be closed
+     */
+    public boolean parse() throws IOException {
+        while (state != DONE) {
+            if (state == BODY) {
+                if (length - bodyStart < contentLength) {
+                    return false;
+                }
+                if (contentLength > 0) {
+                    body = Arrays.copyOfRange(buffer, bodyStart, bodyStart + contentLength);
+                }
+                position = bodyStart + contentLength;
+                state = DONE;
+                break;
+            }
+
+            if (position >= length) {
+                return false;
+            }
+            if (position >= MAX_HEADER_SIZE) {
+                throw new IOException("Request header is larger than " + MAX_HEADER_SIZE + " bytes");
+            }
+
+            byte b = buffer[position];
+            switch (state) {
+                case REQUEST_LINE_START:
+                    if (b != '\r' && b != '\n') {
+                        tokenStart = position;
+                        state = METHOD;
+                        continue;
+                    }
+                    break;
+                case METHOD:
+                    if (b == ' ') {
+                        method = string(tokenStart, position);
+                        tokenStart = position + 1;
+                        queryStart = -1;
+                        state = URI;
+                    } else if (b == '\n') {
+                        throw new IOException("Invalid request line");
+                    }
+                    break;
+                case URI:
+                    if (b == '?' && queryStart == -1) {
+                        queryStart = position;
+                    } else if (b == ' ') {
+                        requestUri = string(tokenStart, queryStart == -1 ? position : queryStart);
+                        if (queryStart != -1) {
+                            queryString = string(queryStart + 1, position);
+                        }
+                        tokenStart = position + 1;
+                        state = PROTOCOL;
+                    } else if (b == '\n') {
+                        throw new IOException("Invalid request line");
+                    }
+                    break;
+                case PROTOCOL:
+                    if (b == '\n') {
+                        protocol = string(tokenStart, lineEnd());
+                        state = HEADER_LINE_START;
+                    }
+                    break;
+                case HEADER_LINE_START:
+                    if (b == '\n') {
+                        // empty line: end of header block
+                        bodyStart = position + 1;
+                        state = BODY;
+                    } else if (b != '\r') {
+                        tokenStart = position;
+                        state = HEADER_NAME;
+                        continue;
+                    }
+                    break;
+                case HEADER_NAME:
+                    if (b == ':') {
+                        headerName = string(tokenStart, position).trim();
+                        tokenStart = position + 1;
+                        state = HEADER_VALUE;
+                    } else if (b == '\n') {
+                        throw new IOException("Invalid header line");
+                    } else if (b >= 'A' && b <= 'Z') {
+                        // header names are case-insensitive and stored in lower case
+                        buffer[position] = (byte) (b + ('a' - 'A'));
+                    }
+                    break;
+                case HEADER_VALUE:
+                    if (b == '\n') {
+                        addHeader(headerName, string(tokenStart, lineEnd()).trim());
+                        state = HEADER_LINE_START;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            position++;
+        }
+        return true;
+    }
+
+    /**
+     * prepare the parser for the next request on the same connection.
+     *  Bytes after the parsed request are kept. The parsed values are handed over to Request, so new
+     *  containers are created instead of clearing them.
+     */
+    public void recycle() {
+        int remaining = length - position;
+        if (buffer.length > MAX_RETAINED_SIZE && remaining <= INITIAL_SIZE) {
+            byte[] newBuffer = new byte[INITIAL_SIZE];
+            System.arraycopy(buffer, position, newBuffer, 0, remaining);
+            buffer = newBuffer;
+        } else {
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+        }
+        length = remaining;
+        position = 0;
+        state = REQUEST_LINE_START;
+        contentLength = 0;
+        contentLengthSeen = false;
+        method = null;
+        requestUri = null;
+        queryString = null;
+        protocol = null;
+        headers = new HashMap<>();
+        body = null;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getRequestUri() {
+        return requestUri;
+    }
+
+    public String getQueryString() {
+        return queryString;
+    }
+
+    public String getProtocol() {
+        return protocol;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * number of buffered bytes which are not handed over as a request yet
+     * @return buffered length
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * add a parsed header. Repeated headers are combined into one comma separated value.
+     * @param name: lower case header name
+     * @param value: header value
+     * @throws IOException: unsupported Transfer-Encoding
+     * @throws BadRequestException: invalid Content-Length, or one which differs from an earlier Content-Length
+     * @throws RequestTooLargeException: Content-Length exceeds maxPostSize
+     */
+    private void addHeader(String name, String value) throws IOException {
+        if (name.equals("content-length")) {
+            // a proxy and this server must not disagree about where the body ends (request smuggling)
+            int length = parseContentLength(value);
+            if (contentLengthSeen && length != contentLength) {
+                throw new BadRequestException(StrUtil.format("Conflicting Content-Length: {} and {}", contentLength, length));
+            }
+            contentLength = length;
+            contentLengthSeen = true;
+            if (maxPostSize >= 0 && contentLength > maxPostSize) {
+                throw new RequestTooLargeException(StrUtil.format("Content-Length {} exceeds maxPostSize {}", contentLength, maxPostSize));
+            }
+        }
+        if (name.equals("transfer-encoding") && !"identity".equalsIgnoreCase(value)) {
+            throw new IOException(StrUtil.format("Transfer-Encoding {} is not supported", value));
+        }
+
+        String existing = headers.get(name);
+        headers.put(name, existing == null ? value : existing + ", " + value);
+    }
+
+    /**
+     * parse the value of a Content-Length header. A list of identical values (e.g. "5, 5") is accepted as one value.
+     * @param value: header value
+     * @return length
+     * @throws BadRequestException: not a number, negative, or a list of different values
+     */
+    private static int parseContentLength(String value) throws BadRequestException {
+        int length = -1;
+        for (String item : value.split(",")) {
+            int itemLength;
+            try {
+                itemLength = Integer.parseInt(item.trim());
+            } catch (NumberFormatException e) {
+                throw new BadRequestException("Invalid Content-Length: " + value);
+            }
+            if (itemLength < 0 || (length != -1 && itemLength != length)) {
+                throw new BadRequestException("Invalid Content-Length: " + value);
+            }
+            length = itemLength;
+        }
+        return length;
+    }
+
+    /**
+     * end of the current line: position of '\n', or of '\r' in front of it
+     * @return end index (exclusive)
+     */
+    private int lineEnd() {
+        if (position > tokenStart && buffer[position - 1] == '\r') {
+            return position - 1;
+        }
+        return position;
+    }
+
+    private String string(int start, int end) {
+        return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }
+    }
+}
@@ -3,32 +3,31 @@ package SimpleTomcat.http;
 import SimpleTomcat.catalina.Connector;
 import SimpleTomcat.catalina.Context;
 import SimpleTomcat.catalina.Service;
-import SimpleTomcat.util.MiniBrowser;
+import SimpleTomcat.util.Constant;
 import cn.hutool.core.convert.Convert;
-import cn.hutool.core.io.IoUtil;
 import cn.hutool.core.util.ArrayUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.core.util.URLUtil;
 
-import javax.management.monitor.StringMonitor;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletContext;
+import javax.servlet.ServletInputStream;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpSession;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.StringReader;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
  * A simple HTTP Request Object
  */
 public class Request extends BaseRequest{
-    private String requestString;                   // http request string
     private String uri;                             // http uri
     private String method;                          // http method;
+    private String protocol;                        // http protocol. e.g. HTTP/1.1
     private Context context;                        // Context object is used to store web services information
     private Service service;                        // Service object provided web services
     private Connector connector;                    // Connector object
@@ -36,33 +35,34 @@ public class Request extends BaseRequest{
     private String queryString;                     // data String from client. e.g. http://127.0.0.1:8080/hello?name=a, the queryString is name=a
     private Map<String, String[]> parameterMap;     // parameterMap: contains data from client to server which is parsed from queryString
     private Map<String, String> headerMap;          // headerMap: contains info about client's system
+    private byte[] body;                            // body: post data, null if empty
     private Cookie[] cookies;                       // cookie: request must be able to accept cookie from client's web browser
     private HttpSession session;                    // session
     private boolean forwarded;                      // server jump
     private Map<String, Object> attributesMap;      // save properties
+    private boolean keepAlive;                      // whether the connection stays open after the response
 
     /**
      * Constructor
      * @param socket: web socket
-     * @throws IOException
+     * @param connector: connector
+     * @param requestParser: parser holding a completely parsed request
      */
-    public Request(Socket socket, Connector connector) throws IOException {
+    public Request(Socket socket, Connector connector, HttpRequestParser requestParser) {
         this.socket = socket;
         this.connector = connector;
         this.service = connector.getService();
         this.parameterMap = new HashMap<>();
-        this.headerMap = new HashMap<>();
         this.attributesMap = new HashMap<>();
 
-        // parse http request
-        parseHttpRequest();
-        if (StrUtil.isEmpty(this.requestString)) {
-            return;
-        }
-        // parse uri
-        parseUri();
-        // parse method
-        parseMethod();
+        // request line, headers and body are already parsed
+        this.method = requestParser.getMethod();
+        this.uri = requestParser.getRequestUri();
+        this.queryString = requestParser.getQueryString();
+        this.protocol = requestParser.getProtocol();
+        this.headerMap = requestParser.getHeaders();
+        this.body = requestParser.getBody();
+
         // parse context
         parseContext();
         if (!this.context.getPath().equals("/")) {
@@ -73,10 +73,10 @@ public class Request extends BaseRequest{
         }
         // parse parameters
         parseParameters();
-        // parse headers
-        parseHeader();
         // parse cookie: cookie is contained in headerMap with key = cookie
         parseCookies();
+        // parse keep-alive from protocol version and connection header
+        parseKeepAlive();
     }
 
     @Override
@@ -109,6 +109,14 @@ public class Request extends BaseRequest{
         return socket;
     }
 
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
     public boolean isForwarded() {
         return forwarded;
     }
@@ -125,11 +133,21 @@ public class Request extends BaseRequest{
         return this.uri;
     }
 
-    public String getRequestString() {
-        return this.requestString;
+    public Context getContext() {
+        return this.context;
     }
 
-    public Context getContext() {
+    /**
+     * start using the context of this request: a lazy context is deployed, and an unloaded one is replaced by the
+     *  context the Host has now for the same path
+     * @return context, null if no context matches the request any more: it was undeployed while the request was
+     *  parsed, or the Host still maps the retired instance
+     */
+    public Context acquireContext() {
+        while (this.context != null && !this.context.acquire()) {
+            Context current = this.service.getEngine().getDefaultHost().getContext(this.context.getPath());
+            this.context = current == this.context ? null : current;
+        }
         return this.context;
     }
 
@@ -219,7 +237,42 @@ public class Request extends BaseRequest{
 
     @Override
     public String getProtocol() {
-        return "HTTP:/1.1";
+        return protocol;
+    }
+
+    @Override
+    public String getQueryString() {
+        return queryString;
+    }
+
+    @Override
+    public int getContentLength() {
+        return Convert.toInt(headerMap.get("content-length"), -1);
+    }
+
+    @Override
+    public String getContentType() {
+        return headerMap.get("content-type");
+    }
+
+    /**
+     * body of the request as input stream
+     * @return ServletInputStream
+     */
+    @Override
+    public ServletInputStream getInputStream() {
+        ByteArrayInputStream bodyInputStream = new ByteArrayInputStream(body == null ? new byte[0] : body);
+        return new ServletInputStream() {
+            @Override
+            public int read() {
+                return bodyInputStream.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                return bodyInputStream.read(b, off, len);
+            }
+        };
     }
 
     @Override
@@ -245,9 +298,21 @@ public class Request extends BaseRequest{
         return "http";
     }
 
+    /**
+     * server name is the host header without port
+     * @return server name
+     */
     @Override
     public String getServerName() {
-        return getHeader("host").trim();
+        String host = getHeader("host");
+        if (host == null) {
+            return getLocalName();
+        }
+        if (host.startsWith("[")) {
+            // IPv6 address
+            return StrUtil.subBefore(host, "]", false) + "]";
+        }
+        return StrUtil.subBefore(host, ":", false);
     }
 
     @Override
@@ -323,28 +388,6 @@ public class Request extends BaseRequest{
         return null;
     }
 
-    /**
-     * parse http request
-     * @throws IOException
-     */
-    private void parseHttpRequest() throws IOException {
-        InputStream is = this.socket.getInputStream();
-        //为什么这里不能用 true 呢？ 因为浏览器默认使用长连接，发出的连接不会主动关闭，那么 Request 读取数据的时候 就会卡在那里了
-        byte[] bytes = MiniBrowser.readBytes(is, false);
-        this.requestString = new String(bytes, "utf-8");
-    }
-
-    /**
-     * parse uri
-     * uri: e.g. http://127.0.0.1(address):8080(port number)/index.html(web page)?(get)name=green
-     */
-    private void parseUri() {
-        if (this.requestString.length() <= 0) return;
-        this.uri = StrUtil.subBetween(this.requestString, " ", " ");
-        if (!StrUtil.contains(this.uri, '?')) return;   // check whether is post http
-        this.uri = StrUtil.subBefore(this.uri, "?", false); // get http
-    }
-
     /**
      * parse context
      */
@@ -364,75 +407,60 @@ public class Request extends BaseRequest{
             this.context = this.service.getEngine().getDefaultHost().getContext("/");
     }
 
-    /**
-     * parse http method
-     */
-    private void parseMethod() {
-        this.method = StrUtil.subBefore(this.requestString, " ", false);
-    }
-
     /**
      * parse client's data (parameters) to server
+     *  GET: parameters come from the query string
+     *  POST: form data in the body is added to parameters of the query string
      */
     private void parseParameters() {
-        // GET Method
-        if (this.method.equals("GET")) {
-            String url = StrUtil.subBetween(this.requestString, " ", " ");
-            if (StrUtil.contains(url, '?')) {
-                this.queryString = StrUtil.subAfter(url, "?", false);
-            }
-        }
+        parseParameters(this.queryString);
 
-        // Post Method
-        if (this.method.equals("POST")) {
-            this.queryString = StrUtil.subAfter(requestString, "\r\n\r\n", false);
+        if (Constant.HttpPost.equals(this.method) && this.body != null) {
+            String contentType = getContentType();
+            if (contentType == null || contentType.startsWith("application/x-www-form-urlencoded")) {
+                parseParameters(new String(this.body, StandardCharsets.UTF_8));
+            }
         }
+    }
 
-        if (this.queryString == null) {
+    /**
+     * parse url encoded key=value pairs separated by & to parameterMap
+     * @param data: url encoded data
+     */
+    private void parseParameters(String data) {
+        if (StrUtil.isEmpty(data)) {
             return;
         }
 
-        // QueryString -> parameterMap
-        queryString = URLUtil.decode(queryString);
-        String[] paramPairs = queryString.split("&");
-        if (paramPairs != null) {
-            for (String paramPair : paramPairs) {
-                String[] param = paramPair.split("=");
-                String key = param[0];
-                String value = param[1];
-
-                String[] values;
-                if (parameterMap.containsKey(key)) {
-                    values = parameterMap.get(key);
-                    values = ArrayUtil.append(values, value);
-                } else {
-                    values = new String[]{value};
-                }
-                parameterMap.put(key, values);
+        for (String paramPair : data.split("&")) {
+            if (paramPair.isEmpty()) {
+                continue;
             }
+            int equalIndex = paramPair.indexOf('=');
+            String key = URLUtil.decode(equalIndex == -1 ? paramPair : paramPair.substring(0, equalIndex));
+            String value = equalIndex == -1 ? "" : URLUtil.decode(paramPair.substring(equalIndex + 1));
+
+            String[] values;
+            if (parameterMap.containsKey(key)) {
+                values = parameterMap.get(key);
+                values = ArrayUtil.append(values, value);
+            } else {
+                values = new String[]{value};
+            }
+            parameterMap.put(key, values);
         }
     }
 
     /**
-     * parse header info
+     * HTTP/1.1 connections are persistent unless the client sends Connection: close.
+     * HTTP/1.0 connections are only persistent if the client sends Connection: keep-alive.
      */
-    private void parseHeader() {
-        StringReader stringReader = new StringReader(requestString);
-        List<String> lines = new ArrayList<>();
-        IoUtil.readLines(stringReader, lines);
-
-        // Start from the second line because the first line is http url
-        for (int i = 1; i < lines.size(); i++) {
-            String line = lines.get(i);
-
-            // End of request header
-            if (line.length() == 0) {
-                break;
-            }
-            String[] infos = line.split(":");
-            String headerName = infos[0].toLowerCase();
-            String headerVal = infos[1];
-            headerMap.put(headerName, headerVal);
+    private void parseKeepAlive() {
+        String connection = StrUtil.trim(headerMap.get("connection"));
+        if ("HTTP/1.1".equals(this.protocol)) {
+            this.keepAlive = !"close".equalsIgnoreCase(connection);
+        } else {
+            this.keepAlive = "keep-alive".equalsIgnoreCase(connection);
         }
     }
 
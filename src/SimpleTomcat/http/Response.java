@@ -1,45 +1,237 @@
 package SimpleTomcat.http;
 
+import SimpleTomcat.catalina.CachedResource;
+import SimpleTomcat.compression.ContentEncoder;
+import SimpleTomcat.util.Constant;
+import SimpleTomcat.util.HttpDateUtil;
 import cn.hutool.core.date.DateField;
 import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.util.StrUtil;
 
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.Cookie;
+import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.io.StringWriter;
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * A Simple Http Response Object
+ *  getWriter() and getOutputStream() write into a ResponseOutputStream with a bounded buffer. A body that fits
+ *  into the buffer is sent by HttpProcessor with Content-Length; a larger one commits the response and is
+ *  streamed with Transfer-Encoding: chunked while the servlet is still writing.
+ *  The framing headers (Content-Length, Transfer-Encoding, Connection) are always written by the server. A servlet
+ *  which sets them as headers goes through setContentLength and the keep-alive flag instead, so a response never
+ *  carries two conflicting lengths. Content-Type goes through setContentType.
  */
 public class Response extends BaseResponse{
-    private StringWriter stringWriter;          // to store responded html text
-    private PrintWriter printWriter;            // to write data into stringWriter
+    // reason phrases of the status line, RFC 7231 and RFC 7233
+    private static final Map<Integer, String> REASON_PHRASES = new HashMap<>();
+    static {
+        REASON_PHRASES.put(100, "Continue");
+        REASON_PHRASES.put(101, "Switching Protocols");
+        REASON_PHRASES.put(200, "OK");
+        REASON_PHRASES.put(201, "Created");
+        REASON_PHRASES.put(202, "Accepted");
+        REASON_PHRASES.put(203, "Non-Authoritative Information");
+        REASON_PHRASES.put(204, "No Content");
+        REASON_PHRASES.put(205, "Reset Content");
+        REASON_PHRASES.put(206, "Partial Content");
+        REASON_PHRASES.put(300, "Multiple Choices");
+        REASON_PHRASES.put(301, "Moved Permanently");
+        REASON_PHRASES.put(302, "Found");
+        REASON_PHRASES.put(303, "See Other");
+        REASON_PHRASES.put(304, "Not Modified");
+        REASON_PHRASES.put(307, "Temporary Redirect");
+        REASON_PHRASES.put(308, "Permanent Redirect");
+        REASON_PHRASES.put(400, "Bad Request");
+        REASON_PHRASES.put(401, "Unauthorized");
+        REASON_PHRASES.put(403, "Forbidden");
+        REASON_PHRASES.put(404, "Not Found");
+        REASON_PHRASES.put(405, "Method Not Allowed");
+        REASON_PHRASES.put(406, "Not Acceptable");
+        REASON_PHRASES.put(408, "Request Timeout");
+        REASON_PHRASES.put(409, "Conflict");
+        REASON_PHRASES.put(410, "Gone");
+        REASON_PHRASES.put(411, "Length Required");
+        REASON_PHRASES.put(412, "Precondition Failed");
+        REASON_PHRASES.put(413, "Payload Too Large");
+        REASON_PHRASES.put(414, "URI Too Long");
+        REASON_PHRASES.put(415, "Unsupported Media Type");
+        REASON_PHRASES.put(416, "Range Not Satisfiable");
+        REASON_PHRASES.put(417, "Expectation Failed");
+        REASON_PHRASES.put(426, "Upgrade Required");
+        REASON_PHRASES.put(429, "Too Many Requests");
+        REASON_PHRASES.put(500, "Internal Server Error");
+        REASON_PHRASES.put(501, "Not Implemented");
+        REASON_PHRASES.put(502, "Bad Gateway");
+        REASON_PHRASES.put(503, "Service Unavailable");
+        REASON_PHRASES.put(504, "Gateway Timeout");
+        REASON_PHRASES.put(505, "HTTP Version Not Supported");
+    }
+
+    private Request request;                    // request of this response: socket, protocol and keep-alive
+    private ResponseOutputStream outputStream;  // body stream with bounded buffer
+    private PrintWriter printWriter;            // to write text into outputStream, encoded as UTF-8
     private String contentType;                 // header: content-type
+    private long contentLength = -1;            // length declared by setContentLength, -1 if none. Used for HEAD
     private byte[] body;                        // response body
+    private File file;                          // file streamed from disk as body instead of body bytes
+    private CachedResource resource;            // static resource the body comes from, its gzip variant is cached
     private int status;                         // status
     private List<Cookie> cookies;               // cookies
     private String redirectPath;                // redirect path
+    private Map<String, List<String>> headers;  // headers set by servlets. key: case-insensitive name, value: values
 
     /**
      * Constructor. Set contentType to "text/html"
+     * @param request: request of this response
      */
-    public Response() {
-        this.stringWriter = new StringWriter();
-        this.printWriter = new PrintWriter(this.stringWriter, true);    // open the autoFlush to automatically write printWriter to stringWriter
+    public Response(Request request) {
+        this.request = request;
+        this.outputStream = new ResponseOutputStream(this);
+        this.printWriter = new PrintWriter(new Utf8Writer(this.outputStream), false);    // no autoFlush: every flush would commit the response
         this.contentType = "text/html";
         this.cookies = new ArrayList<>();
+        this.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
     }
 
     // remove cache to make sure resetting body when server jump happens. This aims to prevent last page impacting current web page
     @Override
     public void resetBuffer() {
-        this.stringWriter.getBuffer().setLength(0);
+        this.outputStream.resetBuffer();
+        this.body = null;
+        this.file = null;
+        this.resource = null;
+    }
+
+    @Override
+    public void reset() {
+        resetBuffer();
+        this.status = 0;
+        this.contentType = "text/html";
+        this.contentLength = -1;
+        this.headers.clear();
+    }
+
+    @Override
+    public void setBufferSize(int size) {
+        this.outputStream.setBufferSize(size);
+    }
+
+    @Override
+    public int getBufferSize() {
+        return this.outputStream.getBufferSize();
+    }
+
+    /**
+     * commit the response and send what has been written so far
+     * @throws IOException: IOException
+     */
+    @Override
+    public void flushBuffer() throws IOException {
+        this.printWriter.flush();
+        this.outputStream.flush();
+    }
+
+    @Override
+    public boolean isCommitted() {
+        return this.outputStream.isCommitted();
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        return this.outputStream;
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        return "UTF-8";
+    }
+
+    /**
+     * send the head of a body whose length is unknown. Called by ResponseOutputStream when its buffer is full.
+     *  HTTP/1.1: Transfer-Encoding: chunked, the connection can be kept alive.
+     *  HTTP/1.0 has no chunked encoding: the body ends when the connection is closed.
+     *  A compressible body is encoded on the way, so it is compressed in constant memory as well.
+     *  close() of the returned stream ends the body but leaves the socket open.
+     *  For a HEAD request only the head is sent, and the body written by the servlet is discarded.
+     * @return stream for the body
+     * @throws IOException: IOException
+     */
+    OutputStream commit() throws IOException {
+        boolean chunked = "HTTP/1.1".equals(request.getProtocol());
+        if (!chunked) {
+            request.setKeepAlive(false);
+        }
+        ContentEncoder encoder = request.getConnector().getContentEncoder(request, this, -1);
+        if (encoder != null) {
+            setHeader("Content-Encoding", encoder.getName());
+        }
+        String framingHeaders = chunked
+                ? StrUtil.format(Constant.response_header_chunked, request.isKeepAlive() ? "keep-alive" : "close")
+                : "\r\nConnection: close";
+        int code = status == 0 ? Constant.CODE_200 : status;
+        String headText = StrUtil.format(Constant.response_head_committed, code, getReasonPhrase(code), contentType,
+                getCookiesHeader() + getHeadersText() + framingHeaders);
+
+        OutputStream socketOutputStream = request.getSocket().getOutputStream();
+        socketOutputStream.write(headText.getBytes(StandardCharsets.UTF_8));
+        if (Constant.HttpHead.equals(request.getMethod())) {
+            socketOutputStream.flush();
+            return OutputStream.nullOutputStream();
+        }
+        OutputStream bodyStream = chunked ? new ChunkedOutputStream(socketOutputStream) : new CloseDelimitedOutputStream(socketOutputStream);
+        return encoder != null ? encoder.wrap(bodyStream, request.getConnector().getCompressionPolicy().getLevel()) : bodyStream;
+    }
+
+    /**
+     * socket stream of an HTTP/1.0 body which ends with the connection: close() only flushes,
+     * the connector closes the socket because keep-alive is off
+     */
+    private static class CloseDelimitedOutputStream extends FilterOutputStream {
+        CloseDelimitedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+
+    /**
+     * complete a committed response after the servlet returned: send the rest of the buffer and end the body
+     * @throws IOException: IOException
+     */
+    public void finish() throws IOException {
+        this.outputStream.finish();
+    }
+
+    /**
+     * reason phrase of the status line
+     * @param status: status code
+     * @return reason phrase, "Unknown" for codes missing in REASON_PHRASES
+     */
+    private static String getReasonPhrase(int status) {
+        return REASON_PHRASES.getOrDefault(status, "Unknown");
     }
 
     @Override
@@ -61,6 +253,20 @@ public class Response extends BaseResponse{
         return this.contentType;
     }
 
+    @Override
+    public void setContentLength(int contentLength) {
+        this.contentLength = contentLength;
+    }
+
+    /**
+     * length declared by the servlet. The body actually written decides Content-Length; the declared one only
+     * stands in for the body a HEAD response leaves out (HttpServlet.doHead declares the length of the GET body).
+     * @return declared length, -1 if none
+     */
+    public long getContentLength() {
+        return this.contentLength;
+    }
+
     @Override
     public void setStatus(int status) {
         this.status = status;
@@ -73,7 +279,7 @@ public class Response extends BaseResponse{
 
     /**
      * This getter function provided here is used to put data into printWriter by Response.getWriter.println(String).
-     * Use the autoFlush provided from PrintWriter to put data into stringWriter
+     * The writer has no buffer of its own: text goes straight into the bounded buffer of outputStream.
      * @return
      */
     @Override
@@ -90,13 +296,124 @@ public class Response extends BaseResponse{
         return this.cookies;
     }
 
+    @Override
+    public boolean containsHeader(String name) {
+        return getHeader(name) != null;
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (setSpecialHeader(name, value)) {
+            return;
+        }
+        List<String> values = new ArrayList<>();
+        values.add(value);
+        headers.put(name, values);
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if (setSpecialHeader(name, value)) {
+            return;
+        }
+        headers.computeIfAbsent(name, key -> new ArrayList<>()).add(value);
+    }
+
     /**
-     * get byte array from html
-     * @return
-     * @throws UnsupportedEncodingException
+     * route headers the server writes itself to their setters, so they never appear twice in the head
+     * @param name: header name
+     * @param value: header value
+     * @return true if the header is handled and must not be added to headers
+     */
+    private boolean setSpecialHeader(String name, String value) {
+        if ("Content-Type".equalsIgnoreCase(name)) {
+            setContentType(value);
+            return true;
+        }
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            try {
+                this.contentLength = Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                // invalid length: ignored like a missing one
+            }
+            return true;
+        }
+        if ("Connection".equalsIgnoreCase(name)) {
+            if ("close".equalsIgnoreCase(value.trim())) {
+                request.setKeepAlive(false);
+            }
+            return true;
+        }
+        // the body is chunked by the server when needed
+        return "Transfer-Encoding".equalsIgnoreCase(name);
+    }
+
+    @Override
+    public void setDateHeader(String name, long date) {
+        setHeader(name, HttpDateUtil.format(date));
+    }
+
+    @Override
+    public void addDateHeader(String name, long date) {
+        addHeader(name, HttpDateUtil.format(date));
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        setHeader(name, String.valueOf(value));
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        addHeader(name, String.valueOf(value));
+    }
+
+    @Override
+    public String getHeader(String name) {
+        if ("Content-Type".equalsIgnoreCase(name)) {
+            return contentType;
+        }
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            return contentLength == -1 ? null : String.valueOf(contentLength);
+        }
+        List<String> values = headers.get(name);
+        return values == null ? null : values.get(0);
+    }
+
+    @Override
+    public Collection<String> getHeaders(String name) {
+        List<String> values = headers.get(name);
+        return values == null ? Collections.emptyList() : Collections.unmodifiableList(values);
+    }
+
+    @Override
+    public Collection<String> getHeaderNames() {
+        return Collections.unmodifiableSet(headers.keySet());
+    }
+
+    /**
+     * build header lines of headers set by servlets, in the same format as getCookiesHeader
+     * @return "\r\nname: value" for every value
      */
-    public byte[] getBody() throws UnsupportedEncodingException {
-        if (body == null) body = stringWriter.toString().getBytes("utf-8");
+    public String getHeadersText() {
+        StringBuilder headersText = new StringBuilder();
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            for (String value : entry.getValue()) {
+                headersText.append("\r\n").append(entry.getKey()).append(": ").append(value);
+            }
+        }
+        return headersText.toString();
+    }
+
+    /**
+     * get byte array of the body: set by setBody, or written by the servlet and still in the buffer
+     * @return body
+     */
+    public byte[] getBody() {
+        if (body == null) {
+            // printWriter keeps no bytes of its own, and flushing it would commit the response
+            body = outputStream.getBufferedBytes();
+        }
 
         return body;
     }
@@ -105,6 +422,39 @@ public class Response extends BaseResponse{
         this.body = body;
     }
 
+    /**
+     * get file which is sent as body
+     * @return file, null if the body is in memory
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * send a file from disk as body. HttpProcessor transfers it to the socket without loading it into memory.
+     * @param file: file
+     */
+    public void setFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * get static resource the body comes from
+     * @return resource, null if the body is not a static file
+     */
+    public CachedResource getResource() {
+        return resource;
+    }
+
+    /**
+     * mark the body as the content of a static resource, so the cached gzip variant can be sent instead
+     * of compressing the body for every request
+     * @param resource: resource
+     */
+    public void setResource(CachedResource resource) {
+        this.resource = resource;
+    }
+
     /**
      * GetCookiesHeader() is used to create cookie from client's info
      *  Cookie is a way to transfer information or data between client(web browser) and server.
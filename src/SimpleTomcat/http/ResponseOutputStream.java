@@ -0,0 +1,143 @@
+package SimpleTomcat.http;
+
+import javax.servlet.ServletOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * ResponseOutputStream is the body stream of a Response, shared by getOutputStream() and getWriter().
+ *  Output is collected in a buffer of bufferSize bytes (8192 by default, see Response.setBufferSize).
+ *  - If the servlet finishes before the buffer is full, HttpProcessor sends the buffered bytes as a normal body
+ *    with Content-Length (and gzip if enabled).
+ *  - If the buffer fills up or the servlet flushes, the response is committed: Response writes the head with
+ *    Transfer-Encoding: chunked, and from then on every full buffer is sent as one chunk, through the encoder
+ *    stream (e.g. gzip) if the connector compresses this response.
+ *  So memory per request stays at bufferSize no matter how large the body is, and the client gets the first
+ *  bytes while the servlet is still writing.
+ */
+public class ResponseOutputStream extends ServletOutputStream {
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final Response response;    // response which writes the head when committing
+    private byte[] buffer;              // buffered body bytes
+    private int count;                  // number of bytes in buffer
+    private OutputStream out;           // body stream after commit: encoder over chunked or raw socket stream, null before
+    private boolean closed;             // closed by the servlet
+
+    public ResponseOutputStream(Response response) {
+        this.response = response;
+        this.buffer = new byte[DEFAULT_BUFFER_SIZE];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkClosed();
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        if (len > buffer.length - count) {
+            flushBuffer();
+            if (len >= buffer.length) {
+                // larger than the whole buffer: write it through
+                out.write(b, off, len);
+                return;
+            }
+        }
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    /**
+     * servlet asks to send what has been written: commit and send the buffer
+     * @throws IOException: IOException
+     */
+    @Override
+    public void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * the servlet is done with the stream. The body is completed by HttpProcessor after the servlet returns.
+     */
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * commit the response if necessary and send the buffered bytes
+     * @throws IOException: IOException
+     */
+    void flushBuffer() throws IOException {
+        if (out == null) {
+            out = response.commit();
+        }
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    /**
+     * complete a committed body: send the rest of the buffer, the end of the encoded data and the last chunk.
+     *  Closing the body stream does not close the socket.
+     * @throws IOException: IOException
+     */
+    void finish() throws IOException {
+        flushBuffer();
+        out.close();
+    }
+
+    /**
+     * @return true if the head has been sent
+     */
+    boolean isCommitted() {
+        return out != null;
+    }
+
+    /**
+     * @return copy of the buffered bytes, the whole body if the response is not committed
+     */
+    byte[] getBufferedBytes() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    /**
+     * discard buffered bytes
+     */
+    void resetBuffer() {
+        if (isCommitted()) {
+            throw new IllegalStateException("Response has already been committed");
+        }
+        count = 0;
+        closed = false;
+    }
+
+    int getBufferSize() {
+        return buffer.length;
+    }
+
+    void setBufferSize(int size) {
+        if (isCommitted() || count > 0) {
+            throw new IllegalStateException("Buffer size can not be changed after content has been written");
+        }
+        buffer = new byte[Math.max(size, 1)];
+    }
+
+    private void checkClosed() throws IOException {
+        if (closed) {
+            throw new IOException("Response output stream is closed");
+        }
+    }
+}
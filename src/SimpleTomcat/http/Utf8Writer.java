@@ -0,0 +1,101 @@
+package SimpleTomcat.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Utf8Writer encodes characters to UTF-8 and writes them straight to the response output stream.
+ *  OutputStreamWriter keeps up to 8 KB of encoded bytes in its own buffer, so the response buffer could not see
+ *  how much has really been written, and flushBuffer would miss data. This writer keeps nothing but the high
+ *  surrogate of a pair that is split between two writes.
+ */
+public class Utf8Writer extends Writer {
+    private static final int MAX_CHARS_PER_WRITE = 1024;  // chars encoded per write to the stream
+
+    private final OutputStream out;         // response output stream
+    private final byte[] bytes;             // encoding scratch space, up to 4 bytes per char (3 per char, 4 per pair)
+    private char highSurrogate;             // pending high surrogate, 0 if none
+
+    public Utf8Writer(OutputStream out) {
+        this.out = out;
+        this.bytes = new byte[MAX_CHARS_PER_WRITE * 4];
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        int end = off + len;
+        while (off < end) {
+            int count = Math.min(end - off, MAX_CHARS_PER_WRITE);
+            int size = encode(cbuf, off, count);
+            out.write(bytes, 0, size);
+            off += count;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        char[] chars = new char[Math.min(len, MAX_CHARS_PER_WRITE)];
+        int end = off + len;
+        while (off < end) {
+            int count = Math.min(end - off, chars.length);
+            str.getChars(off, off + count, chars, 0);
+            out.write(bytes, 0, encode(chars, 0, count));
+            off += count;
+        }
+    }
+
+    /**
+     * encode chars into bytes
+     * @param chars: chars
+     * @param off: offset
+     * @param len: number of chars, at most MAX_CHARS_PER_WRITE
+     * @return number of bytes
+     */
+    private int encode(char[] chars, int off, int len) {
+        int size = 0;
+        for (int i = off; i < off + len; i++) {
+            char c = chars[i];
+            if (highSurrogate != 0) {
+                char high = highSurrogate;
+                highSurrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    int codePoint = Character.toCodePoint(high, c);
+                    bytes[size++] = (byte) (0xF0 | (codePoint >> 18));
+                    bytes[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    bytes[size++] = (byte) (0x80 | (codePoint & 0x3F));
+                    continue;
+                }
+                // unpaired surrogate
+                bytes[size++] = '?';
+            }
+
+            if (c < 0x80) {
+                bytes[size++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[size++] = (byte) (0xC0 | (c >> 6));
+                bytes[size++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c)) {
+                highSurrogate = c;
+            } else if (Character.isLowSurrogate(c)) {
+                bytes[size++] = '?';
+            } else {
+                bytes[size++] = (byte) (0xE0 | (c >> 12));
+                bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[size++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
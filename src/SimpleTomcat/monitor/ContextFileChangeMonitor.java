@@ -49,19 +49,27 @@ public class ContextFileChangeMonitor {
             }
 
             private void dealWith(WatchEvent<?> watchEvent) {
+                String fileName = watchEvent.context().toString();
                 synchronized (ContextFileChangeMonitor.class) {
-                    String fileName = watchEvent.context().toString();
-
                     if (stopFlag) {
                         return;
                     }
 
-                    if (fileName.endsWith(".jar") || fileName.endsWith(".class") || fileName.endsWith(".xml")) {
-                        stopFlag = true;
-                        LogFactory.get().info(ContextFileChangeMonitor.this + " detects file changes in Webapp {}", fileName);
-                        context.reload();
+                    if (fileName.endsWith(".jsp")) {
+                        // a changed jsp does not reload the context, its servlet is checked again on the next request
+                        context.getJspServletWrappers().clear();
+                        return;
+                    }
+
+                    if (!fileName.endsWith(".jar") && !fileName.endsWith(".class") && !fileName.endsWith(".xml")) {
+                        return;
                     }
+                    stopFlag = true;
+                    LogFactory.get().info(ContextFileChangeMonitor.this + " detects file changes in Webapp {}", fileName);
                 }
+                // outside the lock: building the new context of one web app must not hold up reloads of the others.
+                // The swap in the Host is a single contextMap.replace, and the old context is drained on its own thread
+                context.reload();
             }
         });
         this.monitor.setDaemon(true);
@@ -1,11 +1,12 @@
 package SimpleTomcat.servlet;
 
+import SimpleTomcat.catalina.CachedResource;
 import SimpleTomcat.catalina.Context;
+import SimpleTomcat.compression.ContentEncoders;
 import SimpleTomcat.http.Request;
 import SimpleTomcat.http.Response;
 import SimpleTomcat.util.Constant;
 import SimpleTomcat.util.XMLParser;
-import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.thread.ThreadUtil;
 import cn.hutool.core.util.StrUtil;
 
@@ -13,7 +14,6 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.File;
 import java.io.IOException;
 
 /**
@@ -41,9 +41,9 @@ public class DefaultServlet extends HttpServlet {
         Context context = request.getContext();
         if("/500.html".equals(uri))
             throw new RuntimeException("this is a deliberately created exception");
-        // uri in root -> open welcome file: index.html/jsp
-        if (uri.equals("/")) {
-            uri = XMLParser.getWelcomeFile(request.getContext());
+        // uri of a directory -> open welcome file: index.html/jsp
+        if (uri.endsWith("/")) {
+            uri = context.getWelcomeFile(uri);
         }
 
         // .jsp file use JspServlet to execute
@@ -52,18 +52,69 @@ public class DefaultServlet extends HttpServlet {
             return;
         }
 
+        // file content, length and mime-type come from the context's resource cache
         String fileName = StrUtil.removePrefix(uri, "/");
-        File file = FileUtil.file(request.getRealPath(fileName));
+        CachedResource resource = context.getResourceCache().getResource(fileName);
 
-        if (file.exists()) {
-            String extensionName = FileUtil.extName(file);
-            response.setContentType(XMLParser.getMineType(extensionName));
-            byte[] body = FileUtil.readBytes(file);
-            response.setBody(body);
+        if (resource.exists()) {
+            response.setContentType(resource.getMimeType());
+            // a pre-compressed sibling (a.css.br, a.css.gz) is sent as it is, no compression at request time
+            String encoding = getPrecompressedEncoding(request, resource);
+            CachedResource representation = encoding == null ? resource : context.getResourceCache().getSibling(resource, encoding);
+            if (resource.getSibling("br") != null || resource.getSibling("gzip") != null) {
+                response.setHeader("Vary", "Accept-Encoding");
+            }
+            // validators for conditional requests, checked by HttpProcessor
+            response.setDateHeader("Last-Modified", resource.getLastModified());
+            if (encoding == null) {
+                response.setHeader("ETag", resource.getETag());
+                response.setHeader("Accept-Ranges", "bytes");
+                // HttpProcessor takes the cached gzip variant of this resource instead of compressing the body again
+                response.setResource(resource);
+            } else {
+                response.setHeader("ETag", resource.getETag(encoding));
+                response.setHeader("Content-Encoding", encoding);
+            }
+            String cacheControl = XMLParser.getCacheControl(resource.getMimeType());
+            if (cacheControl != null) {
+                response.setHeader("Cache-Control", cacheControl);
+            }
+            if (context.getResourceCache().useSendfile(representation)) {
+                // large file: streamed from disk by HttpProcessor
+                response.setFile(representation.getFile());
+            } else {
+                response.setBody(representation.getContent());
+            }
             if (fileName.equals("timeConsume.html")) ThreadUtil.sleep(1000);
             response.setStatus(Constant.CODE_200);
         } else {
             response.setStatus(Constant.CODE_404);
         }
     }
+
+    /**
+     * choose the pre-compressed sibling with the highest quality in Accept-Encoding, br before gzip on equal quality
+     * @param request: request
+     * @param resource: existing resource
+     * @return br, gzip, or null if the file is sent as it is
+     */
+    private static String getPrecompressedEncoding(Request request, CachedResource resource) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return null;
+        }
+        String best = null;
+        double bestQuality = 0;
+        for (String encoding : new String[]{"br", "gzip"}) {
+            if (resource.getSibling(encoding) == null) {
+                continue;
+            }
+            double quality = ContentEncoders.getQuality(acceptEncoding, encoding);
+            if (quality > bestQuality) {
+                best = encoding;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
 }
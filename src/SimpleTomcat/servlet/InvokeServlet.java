@@ -4,7 +4,6 @@ import SimpleTomcat.catalina.Context;
 import SimpleTomcat.http.Request;
 import SimpleTomcat.http.Response;
 import SimpleTomcat.util.Constant;
-import cn.hutool.core.util.ReflectUtil;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -15,6 +14,7 @@ import java.io.IOException;
 /**
  * Servlet, Static Html, and Dynamic html (JSP file) are three things a web-service have to process.
  * InvokeServlet Object is used to process Servlet request.
+ *  The servlet comes from the dispatch table of the Context and is called through the Servlet interface.
  * This object is singleton.
  */
 public class InvokeServlet extends HttpServlet {
@@ -35,24 +35,20 @@ public class InvokeServlet extends HttpServlet {
         Response response = (Response) httpServletResponse;
         String uri = request.getUri();
         Context context = request.getContext();
-        String servletClassName = context.getServletClassByUrl(uri);
 
+        HttpServlet servlet;
         try {
-            Class servletClass = context.getWebappClassLoader().loadClass(servletClassName);
-            System.out.println("ServletClass: " + servletClass);
-            System.out.println("ServletClass's classLoader: " + servletClass.getClassLoader());
-            Object servletObject = context.getHttpServlet(servletClass);
-            ReflectUtil.invoke(servletObject, "service", request, response);
-
-            // set response status
-            if (response.getRedirectPath() != null) {
-                response.setStatus(Constant.CODE_302);
-            } else {
-                response.setStatus(Constant.CODE_200);
-            }
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+            servlet = context.getServletByUrl(uri);
+        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
+            throw new ServletException(e);
         }
+        servlet.service(request, response);
 
+        // set response status
+        if (response.getRedirectPath() != null) {
+            response.setStatus(Constant.CODE_302);
+        } else {
+            response.setStatus(Constant.CODE_200);
+        }
     }
 }
@@ -6,7 +6,6 @@ import SimpleTomcat.http.Request;
 import SimpleTomcat.http.Response;
 import SimpleTomcat.util.Constant;
 import SimpleTomcat.util.JspTranslateUtil;
-import SimpleTomcat.util.XMLParser;
 import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.util.StrUtil;
 
@@ -16,12 +15,15 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
 
 /**
  * JspServlet is designed to deal with jsp file
  *  The basic logic behind JspServlet is: change jsp file into java file
  *  and the build the java file into .class file. Last step is load and
  *  run this .class file.
+ *  The servlet of every jsp is cached in its Context (JspServletWrapper), and the jsp file is checked for
+ *  changes at most every jspCheckInterval seconds, like development=false of Jasper.
  * This object is singleton
  */
 public class JspServlet extends HttpServlet {
@@ -44,45 +46,14 @@ public class JspServlet extends HttpServlet {
             Response response = (Response) httpServletResponse;
             String uri = request.getRequestURI();
 
-            if (uri.equals("/")) {
-                uri = XMLParser.getWelcomeFile(request.getContext());
+            if (uri.endsWith("/")) {
+                uri = request.getContext().getWelcomeFile(uri);
             }
 
-            String fileName = StrUtil.removePrefix(uri, "/");
-            File file = FileUtil.file(request.getRealPath(fileName));
-            File jspFile = file;
-
-            if (jspFile.exists()) {
-                Context context = request.getContext();
-                String path = context.getPath();
-                String subDirectory;
-                // root
-                if (path.equals("/")) {
-                    subDirectory = "_";
-                } else {
-                    // not root
-                    subDirectory = StrUtil.subAfter(path, '/', false);
-                }
-
-                String servletClassPath = JspTranslateUtil.getServletClassPath(uri, subDirectory);
-                File jspServletClassFile = new File(servletClassPath);
-                // determine whether .jsp file need recompile
-                if (!jspServletClassFile.exists()) {
-                    JspTranslateUtil.compileJsp(context, jspFile);
-                } else if (jspFile.lastModified() > jspServletClassFile.lastModified()) {
-                    JspTranslateUtil.compileJsp(context, jspFile);
-                    JspClassLoader.invalidJspClassLoader(uri, context);
-                }
-
-                String extName = FileUtil.extName(file);
-                String mimeType = XMLParser.getMineType(extName);
-                response.setContentType(mimeType);
-
-                JspClassLoader jspClassLoader = JspClassLoader.getJspClassLoader(uri, context);
-                String jspServletClassName = JspTranslateUtil.getJspServletClassName(uri, subDirectory);
-                Class jspServletClass = jspClassLoader.loadClass(jspServletClassName);
-                HttpServlet servlet = context.getHttpServlet(jspServletClass);
-                servlet.service(request, response);
+            JspServletWrapper wrapper = getJspServletWrapper(request, uri);
+            if (wrapper != null) {
+                response.setContentType(wrapper.getContentType());
+                wrapper.getServlet().service(request, response);
 
                 if (response.getRedirectPath() != null) {
                     response.setStatus(Constant.CODE_302);
@@ -96,4 +67,48 @@ public class JspServlet extends HttpServlet {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * get the servlet of a jsp
+     *  The file system (jsp exists, class up to date) is checked at most every jspCheckInterval seconds per jsp,
+     *  or on every request if it is 0. In between, the servlet resolved by the last check is used.
+     * @param request: request
+     * @param uri: uri of the jsp within the context
+     * @return servlet of the jsp, null if the jsp does not exist
+     * @throws Exception: compilation, class loading or servlet creation failed
+     */
+    private JspServletWrapper getJspServletWrapper(Request request, String uri) throws Exception {
+        Context context = request.getContext();
+        Map<String, JspServletWrapper> wrappers = context.getJspServletWrappers();
+        JspServletWrapper wrapper = wrappers.get(uri);
+        long now = System.currentTimeMillis();
+        if (wrapper != null && !wrapper.isCheckDue(now)) {
+            return wrapper;
+        }
+
+        File jspFile = FileUtil.file(request.getRealPath(StrUtil.removePrefix(uri, "/")));
+        if (!jspFile.exists()) {
+            wrappers.remove(uri);
+            return null;
+        }
+
+        // compile if the .jsp file is new or changed, concurrent requests wait for one compilation
+        JspTranslateUtil.compileJspIfModified(context, jspFile, uri);
+
+        // the class loader of a recompiled jsp has been dropped: the same loader means the same class
+        JspClassLoader jspClassLoader = JspClassLoader.getJspClassLoader(uri, context);
+        long nextCheckTime = now + context.getJspCheckInterval() * 1000;
+        if (wrapper != null && wrapper.getServletClass().getClassLoader() == jspClassLoader) {
+            wrapper.setNextCheckTime(nextCheckTime);
+            return wrapper;
+        }
+
+        String jspServletClassName = JspTranslateUtil.getJspServletClassName(uri, JspTranslateUtil.getSubDirectory(context));
+        Class<?> jspServletClass = jspClassLoader.loadClass(jspServletClassName);
+
+        String mimeType = context.getMimeTypes().getMimeTypeOrDefault(FileUtil.extName(jspFile));
+        wrapper = new JspServletWrapper(jspServletClass, context.getHttpServlet(jspServletClass), mimeType, nextCheckTime);
+        wrappers.put(uri, wrapper);
+        return wrapper;
+    }
 }
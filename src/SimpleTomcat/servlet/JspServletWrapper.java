@@ -0,0 +1,46 @@
+package SimpleTomcat.servlet;
+
+import javax.servlet.http.HttpServlet;
+
+/**
+ * JspServletWrapper is the resolved servlet of one jsp of a Context, cached by JspServlet in the Context per uri.
+ *  While the next check is not due, requests use the servlet without touching the file system. When it is due,
+ *  JspServlet checks the jsp and its class again (exists, lastModified) and recompiles if needed.
+ */
+public class JspServletWrapper {
+    private final Class<?> servletClass;    // compiled class of the jsp
+    private final HttpServlet servlet;      // servlet instance of servletClass
+    private final String contentType;       // mime type of the jsp extension
+    private volatile long nextCheckTime;    // ms: time of the next check of the file system
+
+    public JspServletWrapper(Class<?> servletClass, HttpServlet servlet, String contentType, long nextCheckTime) {
+        this.servletClass = servletClass;
+        this.servlet = servlet;
+        this.contentType = contentType;
+        this.nextCheckTime = nextCheckTime;
+    }
+
+    public Class<?> getServletClass() {
+        return servletClass;
+    }
+
+    public HttpServlet getServlet() {
+        return servlet;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @param now: current time in ms
+     * @return true if jsp and class have to be checked before the servlet is used
+     */
+    public boolean isCheckDue(long now) {
+        return now >= nextCheckTime;
+    }
+
+    public void setNextCheckTime(long nextCheckTime) {
+        this.nextCheckTime = nextCheckTime;
+    }
+}
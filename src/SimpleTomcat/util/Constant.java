@@ -10,15 +10,41 @@ import java.io.File;
 public class Constant {
     // 202 http response header: stands for transmission ok
     public final static String response_head_200 = "HTTP/1.1 200 OK\r\n" + "Content-Type: {}{}\r\n\r\n";
-    public final static String response_head_200_gzip = "HTTP/1.1 200 OK\r\nContent-Type: {}{}\r\n" +
-            "Content-Encoding:gzip" +
+    public final static String response_head_200_encoded = "HTTP/1.1 200 OK\r\nContent-Type: {}{}\r\n" +
+            "Content-Encoding: {}" +
             "\r\n\r\n";
 
+    // framing headers appended to every response head: body length and connection persistence
+    public final static String response_header_framing = "\r\nContent-Length: {}\r\nConnection: {}";
+    // framing headers of a response committed before its length is known
+    public final static String response_header_chunked = "\r\nTransfer-Encoding: chunked\r\nConnection: {}";
+    // head of a response committed by a full buffer: status code, reason, content type, headers
+    public final static String response_head_committed = "HTTP/1.1 {} {}\r\nContent-Type: {}{}\r\n\r\n";
+
+    // 206 http response header: part of the body, Content-Range or multipart/byteranges
+    public final static String response_head_206 = "HTTP/1.1 206 Partial Content\r\n" + "Content-Type: {}{}\r\n\r\n";
+    // head of one part of a multipart/byteranges body
+    public final static String multipart_byteranges_part_head = "\r\n--{}\r\nContent-Type: {}\r\nContent-Range: {}\r\n\r\n";
+    // end of a multipart/byteranges body
+    public final static String multipart_byteranges_end = "\r\n--{}--\r\n";
+
     // 302 http response header: client jump
-    public static final String response_head_302 = "HTTP/1.1 302 Found\r\nLocation: {}\r\n\r\n";
+    public static final String response_head_302 = "HTTP/1.1 302 Found\r\nLocation: {}{}\r\n\r\n";
+
+    // 304 http response header: cached copy of client is still valid, no body
+    public static final String response_head_304 = "HTTP/1.1 304 Not Modified\r\nConnection: {}{}\r\n\r\n";
+
+    // 416 http response header: none of the requested ranges is inside the body
+    public final static String response_head_416 = "HTTP/1.1 416 Range Not Satisfiable\r\nContent-Range: bytes */{}{}\r\n\r\n";
+
+    // 400 http response: request which can not be read safely, e.g. conflicting Content-Length, the connection is closed
+    public final static String response_400 = "HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\nConnection: close\r\n\r\n";
+
+    // 413 http response: body announced by Content-Length is larger than maxPostSize, the connection is closed
+    public final static String response_413 = "HTTP/1.1 413 Payload Too Large\r\nContent-Length: 0\r\nConnection: close\r\n\r\n";
 
     // 404 http response header: file not found
-    public final static String response_head_404 = "HTTP/1.1 404 Not Found\r\n" + "Content-Type: text/html\r\n\r\n";
+    public final static String response_head_404 = "HTTP/1.1 404 Not Found\r\n" + "Content-Type: text/html{}\r\n\r\n";
     // 404 html format
     public final static String html_404 =
             "<html><head><title>Simple Tomcat/1.0.1 - Error report</title><style>" +
@@ -35,7 +61,7 @@ public class Constant {
             "</body></html>";
 
     // 500 http response header: Internal Server Error
-    public final static String response_head_500 = "HTTP/1.1 500 Internal Server Error\r\n" + "Content-Type: text/html\r\n\r\n";
+    public final static String response_head_500 = "HTTP/1.1 500 Internal Server Error\r\n" + "Content-Type: text/html{}\r\n\r\n";
     // 500 html format
     public final static String html_500 =
             "<html><head><title>Simple Tomcat/1.0.1 - Error report</title><style>"
@@ -52,6 +78,22 @@ public class Constant {
             + "<p>Stacktrace:</p>" + "<pre>{}</pre>" + "<HR size='1' noshade='noshade'><h3>SimpleTomcat 1.0.1</h3>"
             + "</body></html>";
 
+    // 503 http response header: no worker thread available, the connection is closed
+    public final static String response_head_503 = "HTTP/1.1 503 Service Unavailable\r\n" + "Content-Type: text/html{}\r\n\r\n";
+    // 503 html format
+    public final static String html_503 =
+            "<html><head><title>Simple Tomcat/1.0.1 - Error report</title><style>" +
+            "<!--H1 {font-family:Tahoma,Arial,sans-serif;color:white;background-color:#525D76;font-size:22px;} " +
+            "BODY {font-family:Tahoma,Arial,sans-serif;color:black;background-color:white;} " +
+            "B {font-family:Tahoma,Arial,sans-serif;color:white;background-color:#525D76;} " +
+            "P {font-family:Tahoma,Arial,sans-serif;background:white;color:black;font-size:12px;}" +
+            "HR {color : #525D76;}--></style> " +
+            "</head><body><h1>HTTP Status 503 - Service Unavailable</h1>" +
+            "<HR size='1' noshade='noshade'><p><b>type</b> Status report</p><p><b>description</b> " +
+            "<u>The server is currently unable to handle the request due to overload. Please retry later.</u></p>" +
+            "<HR size='1' noshade='noshade'><h3>SimpleTomcat 1.0.1</h3>" +
+            "</body></html>";
+
     // WEBAPPS Directory
     public final static File webappsFolder = new File(SystemUtil.get("user.dir"),"webapps");
     public final static File rootFolder = new File(webappsFolder,"ROOT");
@@ -64,13 +106,20 @@ public class Constant {
 
     // Http Code
     public static final int CODE_200 = 200;     // Transmission Success
+    public static final int CODE_206 = 206;     // Partial Content
     public static final int CODE_302 = 302;     // Client Jump
+    public static final int CODE_304 = 304;     // Not Modified
+    public static final int CODE_400 = 400;     // Bad Request
     public static final int CODE_404 = 404;     // File Not Found
+    public static final int CODE_413 = 413;     // Payload Too Large
+    public static final int CODE_416 = 416;     // Range Not Satisfiable
     public static final int CODE_500 = 500;     // Internal Server Error
+    public static final int CODE_503 = 503;     // Service Unavailable
 
     // Http Request Method
     public static final String HttpGet = "GET";
     public static final String HttpPost = "POST";
+    public static final String HttpHead = "HEAD";
 
     // Directory to save file translated from .jsp file to .java file
     public static final String workFolder = SystemUtil.get("user.dir") + File.separator + "work";
@@ -0,0 +1,44 @@
+package SimpleTomcat.util;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * HttpDateUtil formats and parses http dates (RFC 1123), e.g. Sun, 06 Nov 1994 08:49:37 GMT
+ *  DateTimeFormatter is immutable, so unlike SimpleDateFormat it is shared by all request threads.
+ */
+public class HttpDateUtil {
+    // output: IMF-fixdate with two digit day. input: RFC 1123, which also accepts one digit days
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH)
+            .withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter parser = DateTimeFormatter.RFC_1123_DATE_TIME;
+
+    /**
+     * format a time as http date
+     * @param time: ms since epoch
+     * @return http date
+     */
+    public static String format(long time) {
+        return formatter.format(Instant.ofEpochMilli(time));
+    }
+
+    /**
+     * parse a http date
+     * @param date: http date
+     * @return ms since epoch, -1 if date is null or invalid
+     */
+    public static long parse(String date) {
+        if (date == null) {
+            return -1;
+        }
+        try {
+            return ZonedDateTime.parse(date.trim(), parser).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+}
@@ -1,15 +1,30 @@
 package SimpleTomcat.util;
 
 import SimpleTomcat.catalina.Context;
+import SimpleTomcat.classloader.JspClassLoader;
 import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.util.StrUtil;
+import cn.hutool.log.LogFactory;
 import org.apache.jasper.JasperException;
 import org.apache.jasper.JspC;
 
 import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * JspTranslateUtil is to translate .jsp file to .java file and then compile .java file to .class file
+ *  A jsp is compiled at most once at a time: requests which find the same stale jsp wait for the running
+ *  compilation (single flight). With precompileJsp, all jsp files of a Context are compiled when it deploys,
+ *  in parallel on a fork-join pool shared by all contexts. Classes in work/ newer than their jsp are kept, so a
+ *  restart only compiles what changed.
  */
 public class JspTranslateUtil {
     // Define java key words
@@ -20,6 +35,129 @@ public class JspTranslateUtil {
             "super", "switch", "synchronized", "this", "throw", "throws", "transient", "try", "void", "volatile",
             "while" };
 
+    // compilations in progress. key: absolute path of the jsp file, value: completed when its class is written
+    private static final Map<String, CompletableFuture<Void>> compilations = new ConcurrentHashMap<>();
+
+    /**
+     * Fork-join pool compiling the jsp files of deploying contexts, one thread per cpu, created on first use
+     */
+    private static class PrecompilePoolHolder {
+        private static final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("jsp-precompile-" + thread.getPoolIndex());
+            thread.setContextClassLoader(classLoader);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * work directory of a context under work/: _ for ROOT, the path without / otherwise
+     * @param context: context
+     * @return sub directory name
+     */
+    public static String getSubDirectory(Context context) {
+        String path = context.getPath();
+        if (path.equals("/")) {
+            return "_";
+        }
+        return StrUtil.subAfter(path, "/", false);
+    }
+
+    /**
+     * compile a jsp file unless its class is newer.
+     *  Concurrent calls for the same jsp wait for one compilation and do not start their own. The thread which
+     *  recompiles a changed jsp also drops its JspClassLoader, so the next request loads the new class.
+     * @param context: context
+     * @param jspFile: jsp file
+     * @param uri: uri of the jsp within the context, e.g. /index.jsp
+     * @return true if this call compiled the jsp
+     * @throws JasperException: compilation failed, also thrown to the calls which waited for it
+     */
+    public static boolean compileJspIfModified(Context context, File jspFile, String uri) throws JasperException {
+        File classFile = new File(getServletClassPath(uri, getSubDirectory(context)));
+        if (isCompiled(jspFile, classFile)) {
+            return false;
+        }
+
+        String key = jspFile.getAbsolutePath();
+        CompletableFuture<Void> compilation = new CompletableFuture<>();
+        CompletableFuture<Void> runningCompilation = compilations.putIfAbsent(key, compilation);
+        if (runningCompilation != null) {
+            try {
+                runningCompilation.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof JasperException) {
+                    throw (JasperException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new JasperException(cause);
+            }
+            return false;
+        }
+
+        try {
+            // another compilation may have finished between the first check and putIfAbsent
+            if (isCompiled(jspFile, classFile)) {
+                compilation.complete(null);
+                return false;
+            }
+            boolean recompile = classFile.exists();
+            compileJsp(context, jspFile);
+            if (recompile) {
+                JspClassLoader.invalidJspClassLoader(uri, context);
+            }
+            compilation.complete(null);
+            return true;
+        } catch (Throwable t) {
+            // the waiting calls get the failure too, whatever it is, instead of blocking forever
+            compilation.completeExceptionally(t);
+            throw t;
+        } finally {
+            compilations.remove(key, compilation);
+        }
+    }
+
+    private static boolean isCompiled(File jspFile, File classFile) {
+        return classFile.exists() && jspFile.lastModified() <= classFile.lastModified();
+    }
+
+    /**
+     * compile all jsp files of a context which have no up to date class in work/, in parallel on the precompile pool.
+     *  A jsp which fails is logged, the others are compiled anyway.
+     * @param context: context
+     * @return number of jsp files compiled
+     */
+    public static int precompileJsps(Context context) {
+        File docBase = new File(context.getDocBase());
+        List<File> jspFiles = FileUtil.loopFiles(docBase, file -> file.getName().endsWith(".jsp"));
+        AtomicInteger count = new AtomicInteger();
+        try {
+            // a parallel stream started inside a fork-join pool runs on that pool
+            PrecompilePoolHolder.pool.submit(() -> jspFiles.parallelStream().forEach(jspFile -> {
+                String uri = "/" + docBase.toPath().relativize(jspFile.toPath()).toString().replace(File.separatorChar, '/');
+                try {
+                    if (compileJspIfModified(context, jspFile, uri)) {
+                        count.incrementAndGet();
+                    }
+                } catch (JasperException | RuntimeException e) {
+                    LogFactory.get().error(e, "Precompilation of {} failed", jspFile.getAbsolutePath());
+                }
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LogFactory.get().error(e.getCause());
+        }
+        return count.get();
+    }
+
     /**
      * compile Jsp file
      * @param context: context
@@ -27,13 +165,7 @@ public class JspTranslateUtil {
      * @throws JasperException: JasperException
      */
     public static void compileJsp(Context context, File file) throws JasperException {
-        String subDirectory;
-        String path = context.getPath();
-        if (path.equals("/")) {
-            subDirectory = "_";
-        } else {
-            subDirectory = StrUtil.subAfter(path, "/", false);
-        }
+        String subDirectory = getSubDirectory(context);
 
         String workPath = new File(Constant.workFolder, subDirectory).getAbsolutePath() + File.separator;
 
@@ -0,0 +1,113 @@
+package SimpleTomcat.util;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.log.LogFactory;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * MimeTypes maps file extensions to mime types, from the <mime-mapping> elements of a web.xml.
+ *  The server registry is read from conf/web.xml once, when the Server starts. Every Context gets the server
+ *  registry, or a copy with the <mime-mapping> elements of its WEB-INF/web.xml on top.
+ *  A registry never changes after it is built, so lookups are plain HashMap reads without any lock.
+ *  Extensions are compared without case: a.PNG is an image as well.
+ */
+public class MimeTypes {
+    public static final String DEFAULT_MIME_TYPE = "text/html";  // mime type of files with an unknown extension
+
+    private static final MimeTypes serverMimeTypes = load();    // mime mappings of conf/web.xml
+
+    private final Map<String, String> mimeTypeMap;  // key: lower case extension, value: mime type
+
+    private MimeTypes(Map<String, String> mimeTypeMap) {
+        this.mimeTypeMap = Collections.unmodifiableMap(mimeTypeMap);
+    }
+
+    /**
+     * read the server registry from conf/web.xml
+     * @return registry, empty if conf/web.xml cannot be read
+     */
+    private static MimeTypes load() {
+        Map<String, String> map = new HashMap<>();
+        try {
+            Document document = Jsoup.parse(FileUtil.readUtf8String(Constant.webXmlFile));
+            // the first mapping of an extension wins, as before
+            for (Map.Entry<String, String> entry : parse(document).entrySet()) {
+                map.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+        } catch (Exception e) {
+            LogFactory.get().error(e);
+        }
+        return new MimeTypes(map);
+    }
+
+    /**
+     * read <mime-mapping> elements
+     * @param document: web.xml
+     * @return key: lower case extension, value: mime type. The first mapping of an extension wins.
+     */
+    public static Map<String, String> parse(Document document) {
+        Map<String, String> map = new HashMap<>();
+        for (Element element : document.select("mime-mapping")) {
+            Element extension = element.selectFirst("extension");
+            Element mimeType = element.selectFirst("mime-type");
+            if (extension != null && mimeType != null) {
+                map.putIfAbsent(extension.text().trim().toLowerCase(Locale.ENGLISH), mimeType.text().trim());
+            }
+        }
+        return map;
+    }
+
+    /**
+     * @return registry of conf/web.xml
+     */
+    public static MimeTypes getServerMimeTypes() {
+        return serverMimeTypes;
+    }
+
+    /**
+     * build a registry for a Context
+     * @param mappings: mappings of the Context's web.xml, they replace the server mappings of the same extension
+     * @return this registry if there are no mappings, otherwise a new one
+     */
+    public MimeTypes withMappings(Map<String, String> mappings) {
+        if (mappings.isEmpty()) {
+            return this;
+        }
+        Map<String, String> map = new HashMap<>(mimeTypeMap);
+        map.putAll(mappings);
+        return new MimeTypes(map);
+    }
+
+    /**
+     * get the mime type of an extension
+     * @param extensionName: extension without dot, e.g. css
+     * @return mime type, null if the extension is unknown
+     */
+    public String getMimeType(String extensionName) {
+        if (extensionName == null) {
+            return null;
+        }
+        return mimeTypeMap.get(extensionName.toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * get the mime type of an extension to send as Content-Type
+     * @param extensionName: extension without dot, e.g. css
+     * @return mime type, DEFAULT_MIME_TYPE if the extension is unknown
+     */
+    public String getMimeTypeOrDefault(String extensionName) {
+        String mimeType = getMimeType(extensionName);
+        return mimeType != null ? mimeType : DEFAULT_MIME_TYPE;
+    }
+
+    public int size() {
+        return mimeTypeMap.size();
+    }
+}
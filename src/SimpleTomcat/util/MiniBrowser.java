@@ -220,6 +220,12 @@ public class MiniBrowser {
                 path = path + "?" + paramsString;
             }
 
+            // Method Post: server reads exactly Content-Length bytes of post data
+            if (params != null && method == Constant.HttpPost) {
+                String paramsString = HttpUtil.toParams(params);
+                requestHeaders.put("Content-Length", String.valueOf(paramsString.getBytes("utf-8").length));
+            }
+
             // Create Http Response String
             StringBuffer httpRequestString = new StringBuffer();
             String firstLine = method + " " + path + " HTTP/1.1\r\n";
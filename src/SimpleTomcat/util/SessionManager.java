@@ -39,10 +39,10 @@ public class SessionManager {
 
     /**
      * randomly generate sessionId and encrypt by md5
-     * set to synchronized to prevent a session is set to multiple sessionId when multiple threads in working
+     *  No lock is needed: the random bytes come from ThreadLocalRandom and every call has its own md5 digest.
      * @return
      */
-    public static synchronized String generateSessionId() {
+    public static String generateSessionId() {
         String sessionId = null;
         byte[] bytes = RandomUtil.randomBytes(16);
         sessionId = new String(bytes);
@@ -1,16 +1,14 @@
 package SimpleTomcat.util;
 
-import SimpleTomcat.catalina.*;
-import cn.hutool.core.convert.Convert;
 import cn.hutool.core.io.FileUtil;
-import cn.hutool.log.LogFactory;
+import cn.hutool.core.util.StrUtil;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
-import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -20,183 +18,78 @@ import java.util.Map;
  */
 public class XMLParser {
     /**
-     * Get a list of Context Object from server.xml file
-     * @return
+     * Welcome files from <welcome-file-list> in web.xml under conf directory, read once on first use
      */
-    public static List<Context> getContexts(Host host) {
-        List<Context> contexts = new ArrayList<Context>();
-
-        String xml = FileUtil.readUtf8String(Constant.serverXmlFile);
-        Document document = Jsoup.parse(xml);
-
-        Elements elements = document.select("Context");
-        for (Element e : elements) {
-            String path = e.attr("path");
-            String docBase = e.attr("docBase");
-            boolean reloadable = false;
-            if (e.hasAttr("reloadable")) {
-                reloadable = Convert.toBool(e.attr("reloadable"), true);
-            }
-            Context context = new Context(path, docBase, reloadable, host);
-            contexts.add(context);
-        }
-
-        return contexts;
+    private static class WelcomeFileHolder {
+        private static final List<String> welcomeFiles = Collections.unmodifiableList(parseWelcomeFiles(
+                Jsoup.parse(FileUtil.readUtf8String(Constant.webXmlFile))));
     }
 
     /**
-     * Get first host from server.xml file
-     * @return
+     * Get welcome file names from web.xml under conf directory
+     * @return welcome files in order of preference
      */
-    public static String getHostName() {
-        String xml = FileUtil.readUtf8String(Constant.serverXmlFile);
-        Document document = Jsoup.parse(xml);
-        Element host = document.select("Host").first();
-
-        return host.attr("name");
+    public static List<String> getWelcomeFiles() {
+        return WelcomeFileHolder.welcomeFiles;
     }
 
     /**
-     * Get first Engine Default-host from server.xml file
-     * @return
+     * Parse <welcome-file> elements of a web.xml
+     * @param document: web.xml
+     * @return welcome files in order of preference, empty if there are none
      */
-    public static String getEngineDefaultHost() {
-        String xml = FileUtil.readUtf8String(Constant.serverXmlFile);
-        Document document = Jsoup.parse(xml);
-        Element engine = document.selectFirst("Engine");
-
-        return  engine.attr("defaultHost");
-    }
-
-    /**
-     * Get Hosts
-     * @param engine
-     * @return
-     */
-    public static List<Host> getHosts(Engine engine) {
-        List<Host> hosts =  new ArrayList<Host>();
-        String xml = FileUtil.readUtf8String(Constant.serverXmlFile);
-        Document document = Jsoup.parse(xml);
-
-        Elements elements = document.select("Host");
-        for (Element element : elements) {
-            String name = element.attr("name");
-            Host host = new Host(name, engine);
-            hosts.add(host);
-        }
-
-        return hosts;
-    }
-
-    /**
-     * Get Service name
-     * @return
-     */
-    public static String getServiceName() {
-        String xml = FileUtil.readUtf8String(Constant.serverXmlFile);
-        Document document = Jsoup.parse(xml);
-        Element engine = document.selectFirst("Service");
-
-        return  engine.attr("name");
-    }
-
-    /**
-     * Get welcome file name from web.xml
-     * @param context
-     * @return
-     */
-    public static String getWelcomeFile(Context context) {
-        String xml = FileUtil.readUtf8String(Constant.webXmlFile);
-        Document document = Jsoup.parse(xml);
-        Elements elements = document.select("welcome-file");
-        for (Element element : elements) {
-            String welcomeFileName = element.text();
-            File f = new File(context.getDocBase(), welcomeFileName);
-            if (f.exists()) {
-                return f.getName();
+    public static List<String> parseWelcomeFiles(Document document) {
+        List<String> welcomeFiles = new ArrayList<>();
+        for (Element element : document.select("welcome-file")) {
+            String welcomeFileName = StrUtil.removePrefix(element.text().trim(), "/");
+            if (!welcomeFileName.isEmpty()) {
+                welcomeFiles.add(welcomeFileName);
             }
         }
-        // if no file found, return index.html
-        return "index.html";
+        return welcomeFiles;
     }
 
     /**
-     * Mine-type parser
+     * Cache-Control rules from <cache-control-mapping> in web.xml under conf directory.
+     *  The holder class is initialized on first use only, which the JVM does exactly once.
      */
-    private static Map<String, String> mineTypeMap = new HashMap<String, String>();
+    private static class CacheControlHolder {
+        private static final Map<String, String> cacheControlMap = initCacheControlMap();
+    }
 
     /**
-     * read mine-type from web.xml file in the conf directory
+     * read cache-control rules from web.xml file in the conf directory
+     * @return unmodifiable map. key: mime-type or type/*, value: Cache-Control header value
      */
-    private static void initMineTypeMap() {
+    private static Map<String, String> initCacheControlMap() {
+        Map<String, String> map = new HashMap<>();
         String xml = FileUtil.readUtf8String(Constant.webXmlFile);
         Document document = Jsoup.parse(xml);
-        Elements elements = document.select("mime-mapping");
+        Elements elements = document.select("cache-control-mapping");
         for (Element element : elements) {
-            // element child 0: extension, element child 1: mine-type
-            if (!mineTypeMap.containsKey(element.child(0).text())) {
-                mineTypeMap.put(element.child(0).text(), element.child(1).text());
-            }
+            String mimeType = element.select("mime-type").text();
+            String cacheControl = element.select("cache-control").text();
+            map.put(mimeType, cacheControl);
         }
+        return Collections.unmodifiableMap(map);
     }
 
     /**
-     * get Mine-type from web.xml
-     * The synchronized key word is used to make sure initMineTypeMap function do not execute multiple time
-     * when multiple request send to server.
-     * @param extensionName: extension name
-     * @return mine-type
-     */
-    public static synchronized String getMineType(String extensionName) {
-        if (mineTypeMap.isEmpty()) initMineTypeMap();
-
-        if (mineTypeMap.containsKey(extensionName)) return mineTypeMap.get(extensionName);
-
-        return "text.html";
-    }
-
-    /**
-     * get connectors
-     *  1. parse connectors' port from server.xml
-     *  2. init. Connector Object
-     *  3. add to connectors list
-     * @param service: service provided by simple tomcat
-     * @return connector
+     * get Cache-Control header value of a mime-type from web.xml
+     *  An exact rule (e.g. text/css) wins over a wildcard rule (e.g. image/*).
+     * @param mimeType: mime-type
+     * @return Cache-Control value, null if there is no rule
      */
-    public static List<Connector> getConnectors(Service service) {
-        List<Connector> connectors = new ArrayList<>();
-
-        String xml = FileUtil.readUtf8String(Constant.serverXmlFile);
-        Document document = Jsoup.parse(xml);
-        Elements elements = document.select("Connector");
-        for (Element element : elements) {
-            int port = Convert.toInt(element.attr("port"));
-            String compression = element.attr("compression");
-            int compressionMinSize = Convert.toInt(element.attr("compressionMinSize"), 0);
-            String noCompressionUserAgents = element.attr("noCompressionUserAgents");
-            String compressionMimeType = element.attr("compressionMimeType");
-
-            Connector connector = new Connector(port, service, compression, compressionMinSize, noCompressionUserAgents, compressionMimeType);
-            connectors.add(connector);
+    public static String getCacheControl(String mimeType) {
+        Map<String, String> map = CacheControlHolder.cacheControlMap;
+        if (mimeType == null || map.isEmpty()) {
+            return null;
         }
 
-        return connectors;
-    }
-
-    /**
-     * Get pwd of WEB-INF/web.xml from context.xml under conf directory.
-     * @return pwd of WEB-INF/web.xml
-     */
-    public static String getWatchedResource() {
-        try {
-            String xml = FileUtil.readUtf8String(Constant.contextXMLFile);
-            Document document = Jsoup.parse(xml);
-            Element watchedResource = document.selectFirst("WatchedResource");
-
-            return watchedResource.text();
-        } catch (Exception e) {
-            e.getStackTrace();
-            return "WEB-INF/web.xml";
+        String cacheControl = map.get(mimeType);
+        if (cacheControl == null) {
+            cacheControl = map.get(StrUtil.subBefore(mimeType, "/", false) + "/*");
         }
+        return cacheControl;
     }
 }